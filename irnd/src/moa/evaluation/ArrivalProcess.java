@@ -0,0 +1,111 @@
+/*
+ *    ArrivalProcess.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.evaluation;
+
+import java.util.Random;
+
+/**
+ * ArrivalProcess.java
+ *
+ * Arrival times (in seconds) of the instances of an emulated real-time feed with a given average rate:
+ * <ul>
+ * <li>Constant: evenly spaced arrivals</li>
+ * <li>Poisson: exponentially distributed gaps</li>
+ * <li>OnOff: bursty feed alternating between on periods with Poisson arrivals and silent off periods, both of
+ * exponentially distributed length. During on periods arrivals come at rate * (on + off) / on, so the long-run average
+ * is still the given rate.</li>
+ * </ul>
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class ArrivalProcess {
+
+    public static final int CONSTANT = 0;
+    public static final int POISSON = 1;
+    public static final int ON_OFF = 2;
+
+    protected final int type;
+    protected final double rate;
+    protected final double meanOnTime;
+    protected final double meanOffTime;
+    protected final double peakRate;
+    protected final Random rng;
+    protected double time = 0;
+    protected double onUntil;
+
+    /**
+     * @param p_type CONSTANT, POISSON or ON_OFF
+     * @param p_rate average number of arrivals per second
+     * @param p_meanOnTime mean length of an on period in seconds (ON_OFF only)
+     * @param p_meanOffTime mean length of an off period in seconds (ON_OFF only)
+     * @param p_seed seed of the arrival process (independent of the stream and the evaluation)
+     */
+    public ArrivalProcess(int p_type, double p_rate, double p_meanOnTime, double p_meanOffTime, long p_seed) {
+        this.type = p_type;
+        this.rate = p_rate;
+        this.meanOnTime = p_meanOnTime;
+        this.meanOffTime = p_meanOffTime;
+        this.peakRate = p_rate * (p_meanOnTime + p_meanOffTime) / p_meanOnTime;
+        this.rng = new Random(p_seed);
+        this.onUntil = (p_type == ON_OFF) ? exponential(p_meanOnTime) : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return arrival time of the next instance, in seconds since the start of the feed
+     */
+    public double next() {
+        switch (type) {
+            case CONSTANT:
+                time += 1.0 / rate;
+                break;
+            case POISSON:
+                time += exponential(1.0 / rate);
+                break;
+            default:
+                double t = time + exponential(1.0 / peakRate);
+                while (t > onUntil) {
+                    // Gaps are memoryless, so the remainder of the on period is simply dropped
+                    double onFrom = onUntil + exponential(meanOffTime);
+                    onUntil = onFrom + exponential(meanOnTime);
+                    t = onFrom + exponential(1.0 / peakRate);
+                }
+                time = t;
+                break;
+        }
+        return time;
+    }
+
+    /**
+     * @param p_mean mean
+     * @return exponentially distributed random number
+     */
+    protected double exponential(double p_mean) {
+        return -Math.log(1.0 - rng.nextDouble()) * p_mean;
+    }
+
+    /**
+     * @return arrival time of the last instance drawn
+     */
+    public double getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ *    DelayedInstanceWheel.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.evaluation;
+
+import java.util.Arrays;
+import weka.core.Instance;
+
+/**
+ * DelayedInstanceWheel.java
+ *
+ * Instances waiting for a deadline on the evaluator's clock (instances seen), e.g. for their label to arrive, held in a
+ * hashed timing wheel. Deadline t lives in slot t mod (number of slots), in a FIFO list, so adding an instance and
+ * taking a due one are O(1) whatever the mix of delays. Deadlines more than one turn of the wheel ahead simply share
+ * a slot with nearer ones and are passed over until their turn comes. Due instances come out in deadline order, and in
+ * the order they were added when deadlines tie.
+ *
+ * Entries live in parallel arrays and are linked by index, so holding an instance allocates nothing once the arrays
+ * have grown to the largest backlog. An entry is addressed by the int handle add() returns; it stays valid until the
+ * entry is released after poll().
+ *
+ * Besides the wheel there is a stack of immediate entries, which poll() hands out (newest first) before anything in
+ * the wheel.
+ *
+ * With a PackedInstanceStore, instances added with a deadline are packed into the store row of their entry and the
+ * Instance object is dropped, so a long backlog holds no instances on the heap; getInstance() restores a new dense
+ * instance with the same values and weight. Immediate entries are always held as they are.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class DelayedInstanceWheel {
+
+    protected static final int MIN_SLOTS = 16;
+    protected static final int MAX_SLOTS = 1 << 20;
+    protected static final int NONE = -1;
+
+    /**
+     * Deadline of an instance that never comes due (e.g. a label that never arrives)
+     */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    // Wheel: FIFO list of entries per slot
+    protected final int[] slotHead;
+    protected final int[] slotTail;
+    protected final int mask;
+    protected final PackedInstanceStore store; // null: hold the instances themselves
+
+    // Entries
+    protected Instance[] instances = new Instance[64]; // null for packed entries
+    protected long[] ticks = new long[64];    // deadline
+    protected int[] next = new int[64];       // next entry in the same list (slot, due, immediate or free list)
+    protected boolean[] recyclable = new boolean[64];
+    protected int freeHead = NONE;
+    protected int numAllocated = 0;
+
+    protected int dueHead = NONE;             // entries of the slot being drained, in order
+    protected int dueTail = NONE;
+    protected int immediateHead = NONE;       // stack of immediate entries
+    protected long cursor = 0;                // next tick whose slot has not been drained
+    protected int numInWheel = 0;
+    protected int size = 0;
+    protected long numNeverDue = 0;
+
+    /**
+     * @param p_horizon delay most instances wait at most (the wheel gets at least one slot per tick of it, within
+     * limits); longer delays still work, at the cost of being passed over once per turn
+     */
+    public DelayedInstanceWheel(long p_horizon) {
+        this(p_horizon, null);
+    }
+
+    /**
+     * @param p_horizon delay most instances wait at most
+     * @param p_store store to pack the instances added with a deadline into (row = entry handle), or null
+     */
+    public DelayedInstanceWheel(long p_horizon, PackedInstanceStore p_store) {
+        this.store = p_store;
+        int numSlots = MIN_SLOTS;
+        while (numSlots <= p_horizon && numSlots < MAX_SLOTS) {
+            numSlots <<= 1;
+        }
+        this.slotHead = new int[numSlots];
+        this.slotTail = new int[numSlots];
+        this.mask = numSlots - 1;
+        Arrays.fill(this.slotHead, NONE);
+        Arrays.fill(this.slotTail, NONE);
+    }
+
+    /**
+     * @param p_inst instance
+     * @param p_deadline clock value at which the instance is due (a deadline already polled past is due at the next
+     * poll), or NEVER
+     * @return handle of the entry
+     */
+    public int add(Instance p_inst, long p_deadline) {
+        int e = allocate(p_inst);
+        ticks[e] = p_deadline;
+        if (p_deadline == NEVER) {
+            // Never polled, so neither the instance nor a packed row is kept. The entry itself stays allocated (its
+            // handle remains valid) until clear().
+            instances[e] = null;
+            --size;
+            ++numNeverDue;
+            return e;
+        }
+        if (store != null) {
+            store.write(e, p_inst);
+            instances[e] = null;
+        }
+        if (p_deadline < cursor) {
+            // Its slot has already been drained
+            appendDue(e);
+            return e;
+        }
+        int slot = (int) (p_deadline & mask);
+        if (slotTail[slot] == NONE) {
+            slotHead[slot] = e;
+        } else {
+            next[slotTail[slot]] = e;
+        }
+        slotTail[slot] = e;
+        ++numInWheel;
+        return e;
+    }
+
+    /**
+     * @param p_inst instance that is due right away
+     * @return handle of the entry
+     */
+    public int addImmediate(Instance p_inst) {
+        int e = allocate(p_inst);
+        ticks[e] = cursor;
+        next[e] = immediateHead;
+        immediateHead = e;
+        return e;
+    }
+
+    /**
+     * @param p_inst instance
+     * @return a free entry holding the instance (not linked into any list yet)
+     */
+    protected int allocate(Instance p_inst) {
+        int e;
+        if (freeHead != NONE) {
+            e = freeHead;
+            freeHead = next[e];
+        } else {
+            if (numAllocated == instances.length) {
+                int capacity = 2 * numAllocated;
+                instances = Arrays.copyOf(instances, capacity);
+                ticks = Arrays.copyOf(ticks, capacity);
+                next = Arrays.copyOf(next, capacity);
+                recyclable = Arrays.copyOf(recyclable, capacity);
+            }
+            e = numAllocated++;
+        }
+        instances[e] = p_inst;
+        next[e] = NONE;
+        recyclable[e] = false;
+        ++size;
+        return e;
+    }
+
+    /**
+     * Take the next due entry. It is no longer in the wheel, but its fields stay readable until release().
+     *
+     * @param p_now current clock value
+     * @return handle of an entry due at or before p_now, or -1 if there is none
+     */
+    public int poll(long p_now) {
+        int e = immediateHead;
+        if (e != NONE) {
+            immediateHead = next[e];
+            --size;
+            return e;
+        }
+        while (dueHead == NONE) {
+            if (numInWheel == 0) {
+                cursor = Math.max(cursor, p_now + 1);
+                return NONE;
+            }
+            if (cursor > p_now) {
+                return NONE;
+            }
+            collect(cursor++);
+        }
+        e = dueHead;
+        dueHead = next[e];
+        if (dueHead == NONE) {
+            dueTail = NONE;
+        }
+        --size;
+        return e;
+    }
+
+    /**
+     * Move the entries of a slot that are due at the given tick to the due list, keeping their order
+     *
+     * @param p_tick tick whose slot to drain
+     */
+    protected void collect(long p_tick) {
+        int slot = (int) (p_tick & mask);
+        int prev = NONE;
+        int e = slotHead[slot];
+        while (e != NONE) {
+            int following = next[e];
+            if (ticks[e] == p_tick) {
+                // Unlink from the slot, append to the due list
+                if (prev == NONE) {
+                    slotHead[slot] = following;
+                } else {
+                    next[prev] = following;
+                }
+                if (slotTail[slot] == e) {
+                    slotTail[slot] = prev;
+                }
+                appendDue(e);
+                --numInWheel;
+            } else {
+                prev = e;
+            }
+            e = following;
+        }
+    }
+
+    /**
+     * @param p_handle entry to append to the due list
+     */
+    protected void appendDue(int p_handle) {
+        next[p_handle] = NONE;
+        if (dueTail == NONE) {
+            dueHead = p_handle;
+        } else {
+            next[dueTail] = p_handle;
+        }
+        dueTail = p_handle;
+    }
+
+    /**
+     * Return an entry taken by poll() to the free list
+     *
+     * @param p_handle handle of the entry
+     */
+    public void release(int p_handle) {
+        instances[p_handle] = null;
+        next[p_handle] = freeHead;
+        freeHead = p_handle;
+    }
+
+    /**
+     * @param p_handle handle of an entry
+     * @return its instance (for a packed entry, a new instance restored from the store on every call)
+     */
+    public Instance getInstance(int p_handle) {
+        Instance ret = instances[p_handle];
+        return (ret != null) ? ret : store.read(p_handle);
+    }
+
+    /**
+     * @param p_handle handle of an entry
+     * @return its deadline
+     */
+    public long getDeadline(int p_handle) {
+        return ticks[p_handle];
+    }
+
+    /**
+     * @param p_handle handle of an entry
+     * @param p_recyclable whether the instance may go back to the stream's pool once the entry is done
+     */
+    public void setRecyclable(int p_handle, boolean p_recyclable) {
+        recyclable[p_handle] = p_recyclable;
+    }
+
+    /**
+     * @param p_handle handle of an entry
+     * @return whether the instance may go back to the stream's pool once the entry is done
+     */
+    public boolean isRecyclable(int p_handle) {
+        return recyclable[p_handle];
+    }
+
+    /**
+     * @return number of entries held (not counting those polled but not yet released)
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if no entries are held
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return number of entries added with a NEVER deadline
+     */
+    public long getNumNeverDue() {
+        return numNeverDue;
+    }
+
+    /**
+     * @return number of slots of the wheel
+     */
+    public int getNumSlots() {
+        return slotHead.length;
+    }
+
+    /**
+     * Drop every entry and restart the clock at 0
+     */
+    public void clear() {
+        Arrays.fill(slotHead, NONE);
+        Arrays.fill(slotTail, NONE);
+        Arrays.fill(instances, 0, numAllocated, null);
+        freeHead = NONE;
+        numAllocated = 0;
+        dueHead = NONE;
+        dueTail = NONE;
+        immediateHead = NONE;
+        cursor = 0;
+        numInWheel = 0;
+        size = 0;
+        numNeverDue = 0;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *    LabelDelayDistribution.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.evaluation;
+
+import java.util.Random;
+
+/**
+ * LabelDelayDistribution.java
+ *
+ * Label latency of each instance, in instances seen (the evaluator's clock):
+ * <ul>
+ * <li>Fixed: every label arrives after the same delay</li>
+ * <li>Exponential: exponentially distributed delays with the given mean</li>
+ * <li>Pareto: heavy-tailed (Lomax, i.e. Pareto shifted to start at 0) delays with the given mean and tail index; most
+ * labels arrive early, but a few take many times the mean. With a tail index of at most 1 the mean is infinite, and the
+ * given mean is used as the scale instead.</li>
+ * <li>PerClass: a fixed delay per class (e.g. fraud labels confirmed later than normal ones)</li>
+ * </ul>
+ * Random delays are rounded to the nearest instance and capped, if a cap is given. The fixed and per-class delays draw
+ * no random numbers. Without a cap, a very small tail index makes a noticeable share of Pareto delays so long (up to
+ * Long.MAX_VALUE) that the label never arrives; deadline() maps those to DelayedInstanceWheel.NEVER instead of letting
+ * the clock value overflow.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class LabelDelayDistribution {
+
+    public static final int FIXED = 0;
+    public static final int EXPONENTIAL = 1;
+    public static final int PARETO = 2;
+    public static final int PER_CLASS = 3;
+
+    protected final int type;
+    protected final double mean;
+    protected final double tailIndex;
+    protected final double scale;
+    protected final long[] classDelays;
+    protected final long maxDelay;
+    protected final Random rng;
+
+    /**
+     * @param p_type FIXED, EXPONENTIAL, PARETO or PER_CLASS
+     * @param p_mean fixed or mean delay, and the delay of classes without their own (PER_CLASS)
+     * @param p_tailIndex tail index alpha of the Pareto delays (smaller is heavier)
+     * @param p_classDelays delay of each class (PER_CLASS only, may be shorter than the number of classes)
+     * @param p_maxDelay longest delay drawn (negative for no cap)
+     * @param p_seed seed of the random delays (independent of the stream and the evaluation)
+     */
+    public LabelDelayDistribution(int p_type, double p_mean, double p_tailIndex, long[] p_classDelays, long p_maxDelay, long p_seed) {
+        this.type = p_type;
+        this.mean = p_mean;
+        this.tailIndex = p_tailIndex;
+        this.scale = (p_tailIndex > 1) ? p_mean * (p_tailIndex - 1) : p_mean;
+        this.classDelays = (p_classDelays != null) ? p_classDelays : new long[0];
+        this.maxDelay = (p_maxDelay < 0) ? Long.MAX_VALUE : p_maxDelay;
+        this.rng = new Random(p_seed);
+    }
+
+    /**
+     * @param p_classValue class of the instance (a missing class is treated as a class without its own delay)
+     * @return delay of the label of the next instance
+     */
+    public long next(double p_classValue) {
+        double d;
+        switch (type) {
+            case FIXED:
+                d = mean;
+                break;
+            case EXPONENTIAL:
+                d = -Math.log(1.0 - rng.nextDouble()) * mean;
+                break;
+            case PARETO:
+                d = scale * (Math.pow(1.0 - rng.nextDouble(), -1.0 / tailIndex) - 1.0);
+                break;
+            default:
+                int y = (int) p_classValue;
+                d = (p_classValue == p_classValue && y >= 0 && y < classDelays.length) ? classDelays[y] : mean;
+                break;
+        }
+        // Math.round saturates at Long.MAX_VALUE, so extreme Pareto draws cannot wrap around
+        return Math.min(Math.round(d), maxDelay);
+    }
+
+    /**
+     * @return delay that nearly all labels arrive within (a good span for a timing wheel of pending labels)
+     */
+    public long getHorizon() {
+        double h;
+        switch (type) {
+            case FIXED:
+                h = mean;
+                break;
+            case PER_CLASS:
+                h = mean;
+                for (long d : classDelays) {
+                    h = Math.max(h, d);
+                }
+                break;
+            default:
+                h = 4 * mean;
+                break;
+        }
+        return Math.min((long) Math.ceil(h), maxDelay);
+    }
+
+    /**
+     * @param p_now current clock value (not negative)
+     * @param p_delay delay drawn by next()
+     * @return p_now + p_delay, or DelayedInstanceWheel.NEVER if that does not fit in a long
+     */
+    public static long deadline(long p_now, long p_delay) {
+        return (p_delay >= DelayedInstanceWheel.NEVER - p_now) ? DelayedInstanceWheel.NEVER : p_now + p_delay;
+    }
+
+    /**
+     * @return true if every instance gets the same delay
+     */
+    public boolean isFixed() {
+        return type == FIXED;
+    }
+
+    /**
+     * @param p_list comma separated delays, one per class (empty for none)
+     * @return parsed delays
+     */
+    public static long[] parseClassDelays(String p_list) {
+        if (p_list == null || p_list.trim().isEmpty()) {
+            return new long[0];
+        }
+        String[] parts = p_list.split(",");
+        long[] ret = new long[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            ret[i] = Long.parseLong(parts[i].trim());
+            if (ret[i] < 0) {
+                throw new IllegalArgumentException("Label delays must not be negative: " + p_list);
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ *    OpenLoopQueueModel.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.evaluation;
+
+import moa.core.Measurement;
+
+/**
+ * OpenLoopQueueModel.java
+ *
+ * Simulated single-server FIFO queue between an open-loop feed and a learner. Each instance gets an arrival time from
+ * an ArrivalProcess. The learner serves instances in chunks, and the service time of a chunk is its measured test and
+ * train time. A chunk starts once its last instance has arrived and the learner has finished the previous chunk. This
+ * gives the delay and backlog the learner would see on a real feed of that rate, without actually pacing the run.
+ *
+ * Per instance, the queueing delay is the time from its arrival to the start of its chunk, the response time runs to
+ * the end of its chunk, and the backlog is the number of earlier instances not yet finished when it arrives. Statistics
+ * are collected per reporting period (see getMeasurements()).
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class OpenLoopQueueModel {
+
+    protected final ArrivalProcess arrivals;
+    protected double serverFreeAt = 0;   // simulated time the learner finishes its current work
+    protected long numArrived = 0;
+
+    // Finish time and cumulative instance count of the chunks that may still be unfinished at the next arrival
+    protected double[] finishTimes = new double[16];
+    protected long[] finishCounts = new long[16];
+    protected int finishHead = 0;
+    protected int finishSize = 0;
+    protected long numFinished = 0;      // instances finished before the last arrival
+    protected double[] stamps = new double[1];
+    protected long[] backlogs = new long[1];
+
+    // Statistics of the current reporting period
+    protected long periodCount = 0;
+    protected double periodStart = 0;
+    protected double periodArrivalStart = 0;
+    protected double periodBusy = 0;
+    protected double sumDelay = 0;
+    protected double maxDelay = 0;
+    protected double sumResponse = 0;
+    protected double sumBacklog = 0;
+    protected long maxBacklog = 0;
+
+    /**
+     * @param p_arrivals arrival process of the feed
+     */
+    public OpenLoopQueueModel(ArrivalProcess p_arrivals) {
+        this.arrivals = p_arrivals;
+    }
+
+    /**
+     * Stamp the next p_count instances with their arrival times and serve them as one chunk
+     *
+     * @param p_count number of instances in the chunk
+     * @param p_serviceSeconds measured time the learner spent on the chunk
+     */
+    public void serve(int p_count, double p_serviceSeconds) {
+        if (p_count <= 0) {
+            serverFreeAt += p_serviceSeconds;
+            periodBusy += p_serviceSeconds;
+            return;
+        }
+        // Arrival times are drawn up front (the chunk cannot start before its last instance has arrived); the backlog
+        // each instance sees only depends on chunks that started before it
+        if (stamps.length < p_count) {
+            stamps = new double[p_count];
+            backlogs = new long[p_count];
+        }
+        for (int i = 0; i < p_count; ++i) {
+            double a = arrivals.next();
+            while (finishSize > 0 && finishTimes[finishHead] <= a) {
+                numFinished = finishCounts[finishHead];
+                finishHead = (finishHead + 1) % finishTimes.length;
+                --finishSize;
+            }
+            stamps[i] = a;
+            backlogs[i] = numArrived - numFinished;
+            ++numArrived;
+        }
+        double start = Math.max(serverFreeAt, stamps[p_count - 1]);
+        double finish = start + p_serviceSeconds;
+        for (int i = 0; i < p_count; ++i) {
+            double delay = start - stamps[i];
+            sumDelay += delay;
+            maxDelay = Math.max(maxDelay, delay);
+            sumResponse += finish - stamps[i];
+            sumBacklog += backlogs[i];
+            maxBacklog = Math.max(maxBacklog, backlogs[i]);
+        }
+        periodCount += p_count;
+        periodBusy += p_serviceSeconds;
+        serverFreeAt = finish;
+        pushFinish(finish, numArrived);
+    }
+
+    /**
+     * @param p_time finish time of a chunk
+     * @param p_count number of instances finished by then
+     */
+    protected void pushFinish(double p_time, long p_count) {
+        if (finishSize == finishTimes.length) {
+            double[] times = new double[2 * finishSize];
+            long[] counts = new long[2 * finishSize];
+            for (int i = 0; i < finishSize; ++i) {
+                times[i] = finishTimes[(finishHead + i) % finishSize];
+                counts[i] = finishCounts[(finishHead + i) % finishSize];
+            }
+            finishTimes = times;
+            finishCounts = counts;
+            finishHead = 0;
+        }
+        int tail = (finishHead + finishSize) % finishTimes.length;
+        finishTimes[tail] = p_time;
+        finishCounts[tail] = p_count;
+        ++finishSize;
+    }
+
+    /**
+     * @return how far (in seconds) the learner is behind the feed: the time from the last arrival until the learner
+     * finishes the work it has been given so far
+     */
+    public double getLag() {
+        return Math.max(0, serverFreeAt - arrivals.getTime());
+    }
+
+    /**
+     * Statistics of the instances served since the previous call, which starts a new reporting period
+     *
+     * @return queueing measurements, always with the same names in the same order
+     */
+    public Measurement[] getMeasurements() {
+        double now = arrivals.getTime();
+        double elapsed = Math.max(now, serverFreeAt) - periodStart;
+        double n = Math.max(1, periodCount);
+        Measurement[] ret = new Measurement[]{
+            new Measurement("open loop arrival rate (instances/s)", (now > periodArrivalStart) ? periodCount / (now - periodArrivalStart) : 0),
+            new Measurement("open loop mean queueing delay (s)", sumDelay / n),
+            new Measurement("open loop max queueing delay (s)", maxDelay),
+            new Measurement("open loop mean response time (s)", sumResponse / n),
+            new Measurement("open loop mean backlog (instances)", sumBacklog / n),
+            new Measurement("open loop max backlog (instances)", maxBacklog),
+            new Measurement("open loop learner utilization", (elapsed > 0) ? Math.min(1, periodBusy / elapsed) : 0),
+            new Measurement("open loop lag (s)", getLag())
+        };
+        periodStart = Math.max(now, serverFreeAt);
+        periodArrivalStart = now;
+        periodCount = 0;
+        periodBusy = 0;
+        sumDelay = 0;
+        maxDelay = 0;
+        sumResponse = 0;
+        sumBacklog = 0;
+        maxBacklog = 0;
+        return ret;
+    }
+}
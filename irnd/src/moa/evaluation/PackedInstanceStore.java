@@ -0,0 +1,193 @@
+/*
+ *    PackedInstanceStore.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.evaluation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * PackedInstanceStore.java
+ *
+ * Rows of instances packed as primitive doubles (weight, then every attribute value) outside the Java heap, for
+ * instances that wait a long time before they are used again (e.g. for a late label). A pending instance then costs
+ * 8 (number of attributes + 1) bytes of native memory rather than a WEKA Instance, its value array and their headers
+ * on the heap, and the garbage collector never has to trace it.
+ *
+ * Rows are addressed by index and live in fixed-size segments that are added as the store grows. Segments are direct
+ * buffers up to a memory budget; past the budget, further segments are mapped from a spill file if one is given, so
+ * the operating system pages the rows that wait longest out to disk and back in when they are read. Without a spill
+ * file, segments stay direct (up to the JVM's -XX:MaxDirectMemorySize).
+ *
+ * Instances come back as dense instances of the store's header, with the same values and weight. The store is not
+ * thread safe.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class PackedInstanceStore implements Closeable {
+
+    protected static final long SEGMENT_BYTES = 1L << 24;
+
+    protected final Instances header;
+    protected final int numAttributes;
+    protected final int rowDoubles;            // weight + values
+    protected final int segmentShift;          // log2 of the rows per segment
+    protected final int segmentMask;
+    protected final long memoryBudget;
+    protected final File spillFile;
+    protected DoubleBuffer[] segments = new DoubleBuffer[4];
+    protected int numSegments = 0;
+    protected int numDirectSegments = 0;
+    protected RandomAccessFile spill = null;
+    protected final double[] scratch;
+
+    /**
+     * @param p_header header of the stored instances (restored instances get it as their dataset)
+     * @param p_memoryBudget bytes of direct memory to use before mapping segments from the spill file
+     * @param p_spillFile file to map segments from past the budget, or null to keep allocating direct memory
+     */
+    public PackedInstanceStore(Instances p_header, long p_memoryBudget, File p_spillFile) {
+        this.header = p_header;
+        this.numAttributes = p_header.numAttributes();
+        this.rowDoubles = numAttributes + 1;
+        long rowsPerSegment = Math.max(1, Long.highestOneBit(SEGMENT_BYTES / (8L * rowDoubles)));
+        this.segmentShift = Long.numberOfTrailingZeros(rowsPerSegment);
+        this.segmentMask = (int) rowsPerSegment - 1;
+        this.memoryBudget = p_memoryBudget;
+        this.spillFile = p_spillFile;
+        this.scratch = new double[rowDoubles];
+    }
+
+    /**
+     * @param p_row row index
+     * @param p_inst instance to pack into the row (dense or sparse)
+     */
+    public void write(int p_row, Instance p_inst) {
+        DoubleBuffer segment = segmentOf(p_row);
+        double[] row = this.scratch;
+        Arrays.fill(row, 0.0);
+        row[0] = p_inst.weight();
+        for (int k = 0; k < p_inst.numValues(); ++k) {
+            row[1 + p_inst.index(k)] = p_inst.valueSparse(k);
+        }
+        segment.position((p_row & segmentMask) * rowDoubles);
+        segment.put(row);
+    }
+
+    /**
+     * @param p_row row index of a written row
+     * @return new dense instance with the packed values and weight
+     */
+    public Instance read(int p_row) {
+        DoubleBuffer segment = segments[p_row >>> segmentShift];
+        segment.position((p_row & segmentMask) * rowDoubles);
+        double weight = segment.get();
+        double[] values = new double[numAttributes];
+        segment.get(values);
+        Instance ret = new DenseInstance(weight, values);
+        ret.setDataset(header);
+        return ret;
+    }
+
+    /**
+     * @param p_row row index
+     * @return segment holding the row, adding segments as needed
+     */
+    protected DoubleBuffer segmentOf(int p_row) {
+        int s = p_row >>> segmentShift;
+        while (s >= numSegments) {
+            addSegment();
+        }
+        return segments[s];
+    }
+
+    /**
+     * Add a segment: direct memory within the budget (or without a spill file), else mapped from the spill file
+     */
+    protected void addSegment() {
+        long bytes = 8L * rowDoubles * (segmentMask + 1L);
+        ByteBuffer buffer;
+        if (spillFile == null || (numDirectSegments + 1) * bytes <= memoryBudget) {
+            buffer = ByteBuffer.allocateDirect((int) bytes);
+            ++numDirectSegments;
+        } else {
+            try {
+                if (spill == null) {
+                    spill = new RandomAccessFile(spillFile, "rw");
+                    spill.setLength(0);
+                }
+                long offset = (numSegments - numDirectSegments) * bytes;
+                buffer = spill.getChannel().map(FileChannel.MapMode.READ_WRITE, offset, bytes);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to map spill file " + spillFile, e);
+            }
+        }
+        if (numSegments == segments.length) {
+            segments = Arrays.copyOf(segments, 2 * numSegments);
+        }
+        segments[numSegments++] = buffer.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+    /**
+     * @return bytes of direct memory held
+     */
+    public long getDirectBytes() {
+        return numDirectSegments * 8L * rowDoubles * (segmentMask + 1L);
+    }
+
+    /**
+     * @return bytes mapped from the spill file
+     */
+    public long getSpilledBytes() {
+        return (numSegments - numDirectSegments) * 8L * rowDoubles * (segmentMask + 1L);
+    }
+
+    /**
+     * Drop every segment and delete the spill file. The memory is returned once the buffers are collected.
+     */
+    @Override
+    public void close() {
+        Arrays.fill(segments, null);
+        numSegments = 0;
+        numDirectSegments = 0;
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                // Nothing more to do with it
+            }
+            spill = null;
+            if (!spillFile.delete()) {
+                spillFile.deleteOnExit();
+            }
+        }
+    }
+}
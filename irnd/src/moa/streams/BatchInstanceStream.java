@@ -0,0 +1,49 @@
+/*
+ *    BatchInstanceStream.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams;
+
+/**
+ * BatchInstanceStream.java
+ *
+ * An InstanceStream that can also fill a caller-supplied columnar buffer with many instances at once. Implementations
+ * must produce exactly the same sequence of instances as repeated calls to nextInstance() would.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public interface BatchInstanceStream extends InstanceStream {
+
+    /**
+     * Fill the batch with up to batch.capacity() next instances of the stream
+     * @param p_batch buffer to (over)write; its size is set to the number of rows produced
+     * @return number of rows produced
+     */
+    public int nextInstances(ColumnarInstanceBatch p_batch);
+
+    /**
+     * A batch holds the class as an int label and no instance weights, so it can only reproduce streams with a
+     * nominal class that is never missing and unit weights. Callers must check this before using nextInstances(), and
+     * fall back to nextInstance() otherwise.
+     *
+     * @return true if nextInstances() yields exactly the instances nextInstance() would
+     */
+    public boolean hasExactBatches();
+}
@@ -0,0 +1,356 @@
+/*
+ *    CachedInstanceStream.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import moa.core.InstancesHeader;
+import moa.core.ObjectRepository;
+import moa.options.AbstractOptionHandler;
+import moa.options.ClassOption;
+import moa.options.FileOption;
+import moa.options.FlagOption;
+import moa.options.IntOption;
+import moa.tasks.TaskMonitor;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+
+/**
+ * CachedInstanceStream.java
+ *
+ * Record-once, replay-many stream cache. The first time it is used, the wrapped stream (a generator, an ARFF file,
+ * etc.) is read once and written to a compact fixed-width binary file: a small header followed by one row of
+ * primitive doubles (weight, then every attribute value including the class) per instance. Every later use with the
+ * same source stream options memory-maps that file and replays it with no parsing or generation at all, so running
+ * many learners/configurations over the same data only pays for generating it once.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class CachedInstanceStream extends AbstractOptionHandler implements BatchInstanceStream {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getPurposeString() {
+        return "Records a stream once to a binary cache file and replays it from a memory mapping thereafter.";
+    }
+
+    public ClassOption streamOption = new ClassOption("stream", 's',
+            "Stream to cache.", InstanceStream.class,
+            "generators.InducedRandomNonStationaryDataGenerator");
+
+    public FileOption cacheFileOption = new FileOption("cacheFile", 'f',
+            "Binary cache file. Created (recorded) if missing or if it was recorded from a different stream.", "stream.cache", "cache", true);
+
+    public IntOption maxInstancesOption = new IntOption("maxInstances", 'm',
+            "Maximum number of instances to record (-1 = the entire stream, for finite streams only)", 10000000, -1, Integer.MAX_VALUE);
+
+    public FlagOption rerecordOption = new FlagOption("rerecord", 'r',
+            "Always re-record the cache, even if a matching one exists");
+
+    // File layout
+    protected static final int CACHE_MAGIC = 0x49524E43; // "IRNC"
+    protected static final int CACHE_VERSION = 2;
+    protected static final int NUM_ROWS_POSITION = 8;     // right after magic and version
+    protected static final int EXACT_BATCHES_POSITION = 24; // right after the data offset
+    protected static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    protected InstancesHeader streamHeader = null;
+    protected int numAttributes = 0;
+    protected long numRows = 0;
+    protected boolean exactBatches = false;              // nominal class, never missing, and unit weights only
+    protected int rowWidth = 0;                          // doubles per row (weight + attribute values)
+    protected transient DoubleBuffer[] segments = null;  // one read-only mapping per (< 2GB) file segment
+    protected transient int rowsPerSegment = 0;
+    protected transient DoubleBuffer currentSegment = null;
+    protected transient int currentSegmentIndex = 0;
+    protected long position = 0;
+    protected double[] rowBuffer = null;
+
+    @Override
+    public void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
+        File cacheFile = this.cacheFileOption.getFile();
+        String fingerprint = getSourceFingerprint();
+        if (this.rerecordOption.isSet() || !fingerprint.equals(readFingerprint(cacheFile))) {
+            monitor.setCurrentActivity("Recording stream to cache " + cacheFile + "...", -1.0);
+            InstanceStream source = (InstanceStream) getPreparedClassOption(this.streamOption);
+            record(source, cacheFile, fingerprint);
+        }
+        monitor.setCurrentActivity("Mapping stream cache " + cacheFile + "...", -1.0);
+        open(cacheFile);
+    }
+
+    /**
+     * @return identification of the recorded data: source stream CLI string and instance limit
+     */
+    protected String getSourceFingerprint() {
+        return this.streamOption.getValueAsCLIString() + " -m " + this.maxInstancesOption.getValue();
+    }
+
+    /**
+     * @param p_file cache file
+     * @return fingerprint of a complete cache file, or null if it is missing, incomplete, or not a cache file
+     */
+    protected static String readFingerprint(File p_file) {
+        if (p_file == null || !p_file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(p_file.toPath()))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION || in.readLong() < 0) {
+                return null;
+            }
+            in.readLong(); // data offset
+            in.readInt();  // exact batches flag
+            return in.readUTF();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the whole source stream (up to maxInstances) into a new cache file. The file is written under a temporary
+     * name and moved into place when complete, so an interrupted recording is never mistaken for a valid cache.
+     *
+     * @param p_source stream to record
+     * @param p_file cache file
+     * @param p_fingerprint source identification stored in the file
+     */
+    protected void record(InstanceStream p_source, File p_file, String p_fingerprint) {
+        long limit = this.maxInstancesOption.getValue();
+        if (limit < 0 && p_source.estimatedRemainingInstances() < 0 && p_source.hasMoreInstances()) {
+            throw new IllegalArgumentException("maxInstances must be set when caching an endless stream");
+        }
+        InstancesHeader header = p_source.getHeader();
+        int width = header.numAttributes() + 1;
+        File tmp = new File(p_file.getPath() + ".tmp");
+        try {
+            // Fixed-size preamble, then the serialized stream header, then the rows (8-byte aligned)
+            ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(headerBytes)) {
+                oos.writeObject(header);
+            }
+            ByteArrayOutputStream preambleBytes = new ByteArrayOutputStream();
+            DataOutputStream preamble = new DataOutputStream(preambleBytes);
+            preamble.writeInt(CACHE_MAGIC);
+            preamble.writeInt(CACHE_VERSION);
+            preamble.writeLong(-1); // number of rows, filled in when the recording completes
+            preamble.writeLong(0);  // data offset placeholder
+            preamble.writeInt(0);   // exact batches flag, filled in when the recording completes
+            preamble.writeUTF(p_fingerprint);
+            preamble.writeInt(headerBytes.size());
+            headerBytes.writeTo(preamble);
+            preamble.flush();
+            long dataOffset = (preambleBytes.size() + 7) & ~7L;
+            byte[] preambleArray = preambleBytes.toByteArray();
+            ByteBuffer.wrap(preambleArray).putLong(16, dataOffset);
+
+            long rows = 0;
+            int classIndex = header.classIndex();
+            boolean exact = (classIndex >= 0 && header.classAttribute().isNominal());
+            try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+                raf.setLength(0);
+                channel.write(ByteBuffer.wrap(preambleArray), 0);
+                channel.position(dataOffset);
+                ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE - (WRITE_BUFFER_SIZE % (width * 8))).order(ByteOrder.LITTLE_ENDIAN);
+                while (p_source.hasMoreInstances() && (limit < 0 || rows < limit)) {
+                    Instance inst = p_source.nextInstance();
+                    if (out.remaining() < width * 8) {
+                        drain(out, channel);
+                    }
+                    out.putDouble(inst.weight());
+                    for (int i = 0; i < header.numAttributes(); ++i) {
+                        out.putDouble(inst.value(i));
+                    }
+                    exact = exact && inst.weight() == 1.0 && !inst.isMissing(classIndex);
+                    ++rows;
+                }
+                drain(out, channel);
+                ByteBuffer flag = ByteBuffer.allocate(4);
+                flag.putInt(0, exact ? 1 : 0);
+                channel.write(flag, EXACT_BATCHES_POSITION);
+                ByteBuffer count = ByteBuffer.allocate(8);
+                count.putLong(0, rows);
+                channel.write(count, NUM_ROWS_POSITION);
+                channel.force(true);
+            }
+            Files.move(tmp.toPath(), p_file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to record stream cache: " + p_file, e);
+        }
+    }
+
+    /**
+     * Write out and clear a buffer
+     */
+    private static void drain(ByteBuffer p_buffer, FileChannel p_channel) throws IOException {
+        p_buffer.flip();
+        while (p_buffer.hasRemaining()) {
+            p_channel.write(p_buffer);
+        }
+        p_buffer.clear();
+    }
+
+    /**
+     * Read the cache preamble and map the rows for replay
+     *
+     * @param p_file cache file
+     */
+    protected void open(File p_file) {
+        try (RandomAccessFile raf = new RandomAccessFile(p_file, "r"); FileChannel channel = raf.getChannel()) {
+            raf.readInt();
+            raf.readInt();
+            this.numRows = raf.readLong();
+            long dataOffset = raf.readLong();
+            this.exactBatches = (raf.readInt() != 0);
+            raf.readUTF();
+            byte[] headerBytes = new byte[raf.readInt()];
+            raf.readFully(headerBytes);
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(headerBytes))) {
+                this.streamHeader = (InstancesHeader) ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unreadable stream header in cache", e);
+            }
+            this.numAttributes = this.streamHeader.numAttributes();
+            this.rowWidth = this.numAttributes + 1;
+            this.rowBuffer = new double[this.rowWidth];
+
+            // A single mapping is limited to 2GB, so larger caches are mapped as several whole-row segments
+            long rowBytes = this.rowWidth * 8L;
+            this.rowsPerSegment = (int) Math.max(1, Integer.MAX_VALUE / rowBytes);
+            int numSegments = (int) Math.max(1, (numRows + rowsPerSegment - 1) / rowsPerSegment);
+            this.segments = new DoubleBuffer[numSegments];
+            for (int s = 0; s < numSegments; ++s) {
+                long firstRow = (long) s * rowsPerSegment;
+                long segmentRows = Math.min(rowsPerSegment, numRows - firstRow);
+                this.segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + firstRow * rowBytes, segmentRows * rowBytes)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to open stream cache: " + p_file, e);
+        }
+        restart();
+    }
+
+    /**
+     * Read the next row (weight followed by the attribute values) into rowBuffer
+     */
+    protected void readRow() {
+        if (!this.currentSegment.hasRemaining()) {
+            this.currentSegment = this.segments[++this.currentSegmentIndex].duplicate();
+        }
+        this.currentSegment.get(this.rowBuffer);
+        ++this.position;
+    }
+
+    @Override
+    public Instance nextInstance() {
+        readRow();
+        double[] values = new double[this.numAttributes];
+        System.arraycopy(this.rowBuffer, 1, values, 0, this.numAttributes);
+        Instance inst = new DenseInstance(this.rowBuffer[0], values);
+        inst.setDataset(this.streamHeader);
+        return inst;
+    }
+
+    /**
+     * Only true if the recording had a nominal class, no missing labels, and unit weights throughout. Otherwise the
+     * cache is served instance by instance.
+     */
+    @Override
+    public boolean hasExactBatches() {
+        return this.exactBatches;
+    }
+
+    /**
+     * Only valid if hasExactBatches(): the columnar batch carries neither instance weights nor missing labels
+     */
+    @Override
+    public int nextInstances(ColumnarInstanceBatch p_batch) {
+        if (!this.exactBatches) {
+            throw new IllegalStateException("Stream cache " + this.cacheFileOption.getFile()
+                    + " has no nominal class, a missing label, or a weighted row; use nextInstance() instead");
+        }
+        int count = (int) Math.min(p_batch.capacity(), this.numRows - this.position);
+        double[][] columns = p_batch.getAttributeValues();
+        int[] labels = p_batch.getClassValues();
+        int classIndex = this.streamHeader.classIndex();
+        for (int row = 0; row < count; ++row) {
+            readRow();
+            for (int column = 0; column < columns.length; ++column) {
+                columns[column][row] = this.rowBuffer[p_batch.attributeIndex(column) + 1];
+            }
+            if (classIndex >= 0) {
+                labels[row] = (int) this.rowBuffer[classIndex + 1];
+            }
+        }
+        p_batch.setSize(count);
+        return count;
+    }
+
+    @Override
+    public InstancesHeader getHeader() {
+        return this.streamHeader;
+    }
+
+    @Override
+    public long estimatedRemainingInstances() {
+        return this.numRows - this.position;
+    }
+
+    @Override
+    public boolean hasMoreInstances() {
+        return this.position < this.numRows;
+    }
+
+    @Override
+    public boolean isRestartable() {
+        return true;
+    }
+
+    @Override
+    public void restart() {
+        this.position = 0;
+        this.currentSegmentIndex = 0;
+        this.currentSegment = this.segments[0].duplicate();
+    }
+
+    @Override
+    public void getDescription(StringBuilder sb, int indent) {
+        if (this.streamHeader != null) {
+            sb.append(String.format("Replaying %s: %d rows, at row %d\n", this.cacheFileOption.getFile(), this.numRows,
+                    this.position));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ *    ColumnarInstanceBatch.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams;
+
+import java.io.Serializable;
+import moa.core.InstancesHeader;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.SparseInstance;
+
+/**
+ * ColumnarInstanceBatch.java
+ *
+ * Re-usable, caller-owned buffer of N instances stored column-wise as primitives: one double[N] column per
+ * (non-class) attribute plus an int[N] of class labels. Streams that implement BatchInstanceStream fill this buffer in
+ * place, so generating a batch allocates nothing. instance(row) is the thin adapter for consumers that still need WEKA
+ * Instance objects.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class ColumnarInstanceBatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    protected InstancesHeader header;
+    protected double[][] attributeValues;   // [column][row]
+    protected int[] classValues;            // [row]
+    protected int[] columnToAttribute;      // column index -> attribute index in header
+    protected int size = 0;
+
+    /**
+     * Construct an empty batch
+     * @param p_header stream header describing the attributes
+     * @param p_capacity maximum number of instances (rows) held by this batch
+     */
+    public ColumnarInstanceBatch(InstancesHeader p_header, int p_capacity) {
+        this.header = p_header;
+        int numColumns = p_header.numAttributes() - ((p_header.classIndex() >= 0) ? 1 : 0);
+        this.attributeValues = new double[numColumns][p_capacity];
+        this.classValues = new int[p_capacity];
+        this.columnToAttribute = new int[numColumns];
+        int column = 0;
+        for (int i = 0; i < p_header.numAttributes(); ++i) {
+            if (i != p_header.classIndex()) {
+                this.columnToAttribute[column++] = i;
+            }
+        }
+    }
+
+    /**
+     * Materialize a row as a WEKA instance for existing MOA consumers
+     * @param p_row row of this batch (0 to size() - 1)
+     * @return new dense instance attached to the stream header
+     */
+    public Instance instance(int p_row) {
+        double[] values = new double[header.numAttributes()];
+        for (int column = 0; column < columnToAttribute.length; ++column) {
+            values[columnToAttribute[column]] = attributeValues[column][p_row];
+        }
+        if (header.classIndex() >= 0) {
+            values[header.classIndex()] = classValues[p_row];
+        }
+        Instance inst = new DenseInstance(1.0, values);
+        inst.setDataset(header);
+        return inst;
+    }
+
+    /**
+     * Materialize a row as a sparse WEKA instance holding only its nonzero values, without building the dense row first
+     * @param p_row row of this batch (0 to size() - 1)
+     * @return new sparse instance attached to the stream header
+     */
+    public Instance sparseInstance(int p_row) {
+        int classIdx = header.classIndex();
+        int numValues = (classIdx >= 0 && classValues[p_row] != 0) ? 1 : 0;
+        for (int column = 0; column < columnToAttribute.length; ++column) {
+            if (attributeValues[column][p_row] != 0) {
+                ++numValues;
+            }
+        }
+        double[] values = new double[numValues];
+        int[] indices = new int[numValues];
+        int k = 0;
+        // Columns are in attribute order with the class skipped, so slot the class in where it belongs
+        boolean classPending = (classIdx >= 0 && classValues[p_row] != 0);
+        for (int column = 0; column < columnToAttribute.length; ++column) {
+            int attIdx = columnToAttribute[column];
+            if (classPending && attIdx > classIdx) {
+                indices[k] = classIdx;
+                values[k++] = classValues[p_row];
+                classPending = false;
+            }
+            if (attributeValues[column][p_row] != 0) {
+                indices[k] = attIdx;
+                values[k++] = attributeValues[column][p_row];
+            }
+        }
+        if (classPending) {
+            indices[k] = classIdx;
+            values[k] = classValues[p_row];
+        }
+        Instance inst = new SparseInstance(1.0, values, indices, header.numAttributes());
+        inst.setDataset(header);
+        return inst;
+    }
+
+    /**
+     * Materialize a row into an instance taken from a pool rather than a new one
+     * @param p_row row of this batch (0 to size() - 1)
+     * @param p_pool pool to draw from, or null to allocate
+     * @return dense instance attached to the stream header
+     */
+    public Instance instance(int p_row, InstancePool p_pool) {
+        if (p_pool == null) {
+            return instance(p_row);
+        }
+        InstancePool.PooledInstance inst = p_pool.take();
+        double[] values = inst.values();
+        for (int column = 0; column < columnToAttribute.length; ++column) {
+            values[columnToAttribute[column]] = attributeValues[column][p_row];
+        }
+        if (header.classIndex() >= 0) {
+            values[header.classIndex()] = classValues[p_row];
+        }
+        inst.setDataset(header);
+        return inst;
+    }
+
+    /**
+     * @return column-major attribute values, [column][row], excluding the class attribute
+     */
+    public double[][] getAttributeValues() {
+        return attributeValues;
+    }
+
+    /**
+     * @return class label per row
+     */
+    public int[] getClassValues() {
+        return classValues;
+    }
+
+    /**
+     * @param p_column column index of getAttributeValues()
+     * @return index of the corresponding attribute in the stream header
+     */
+    public int attributeIndex(int p_column) {
+        return columnToAttribute[p_column];
+    }
+
+    /**
+     * @return number of attribute columns (excluding class)
+     */
+    public int numColumns() {
+        return columnToAttribute.length;
+    }
+
+    /**
+     * @return maximum number of rows
+     */
+    public int capacity() {
+        return classValues.length;
+    }
+
+    /**
+     * @return number of valid rows currently in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param p_size number of valid rows currently in the batch
+     */
+    public void setSize(int p_size) {
+        this.size = p_size;
+    }
+
+    /**
+     * @return stream header
+     */
+    public InstancesHeader getHeader() {
+        return header;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *    InstancePool.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams;
+
+import weka.core.DenseInstance;
+import weka.core.Instance;
+
+/**
+ * InstancePool.java
+ *
+ * Bounded pool of consumed dense instances that a stream may overwrite in place instead of allocating a new instance
+ * (and value array) for every sample. The consumer hands an instance back with offer() once nothing references it any
+ * more; note that DenseInstance.copy() and Instances.add() share the value array of their source, so an instance may
+ * only be offered when no such copy is still in use either. Instances the pool did not hand out, or that do not fit,
+ * are simply dropped.
+ *
+ * Taking and offering are synchronized, so producer and consumer may run on different threads.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class InstancePool {
+
+    /**
+     * Dense instance whose value array its producer may overwrite directly
+     */
+    public static class PooledInstance extends DenseInstance {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param p_numAttributes number of attributes (including the class)
+         */
+        public PooledInstance(int p_numAttributes) {
+            super(p_numAttributes);
+        }
+
+        /**
+         * @return the live value array of this instance (not a copy)
+         */
+        public double[] values() {
+            return m_AttValues;
+        }
+    }
+
+    protected final PooledInstance[] pool;
+    protected final int numAttributes;
+    protected int size = 0;
+    protected long numReused = 0;
+    protected long numAllocated = 0;
+
+    /**
+     * @param p_capacity maximum number of idle instances held
+     * @param p_numAttributes number of attributes (including the class) of every instance
+     */
+    public InstancePool(int p_capacity, int p_numAttributes) {
+        this.pool = new PooledInstance[p_capacity];
+        this.numAttributes = p_numAttributes;
+    }
+
+    /**
+     * @return an idle instance (weight reset to 1) or a new one if the pool is empty. Its values are stale and must all
+     * be overwritten.
+     */
+    public synchronized PooledInstance take() {
+        if (size == 0) {
+            ++numAllocated;
+            return new PooledInstance(numAttributes);
+        }
+        ++numReused;
+        PooledInstance ret = pool[--size];
+        pool[size] = null;
+        ret.setWeight(1.0);
+        return ret;
+    }
+
+    /**
+     * @param p_inst instance the caller (and every copy of it) will never touch again
+     * @return true if the instance was kept for reuse
+     */
+    public synchronized boolean offer(Instance p_inst) {
+        if (size == pool.length || !(p_inst instanceof PooledInstance) || p_inst.numAttributes() != numAttributes) {
+            return false;
+        }
+        pool[size++] = (PooledInstance) p_inst;
+        return true;
+    }
+
+    /**
+     * Drop every idle instance
+     */
+    public synchronized void clear() {
+        while (size > 0) {
+            pool[--size] = null;
+        }
+    }
+
+    /**
+     * @return number of idle instances held
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return number of take() calls served from the pool
+     */
+    public synchronized long getNumReused() {
+        return numReused;
+    }
+
+    /**
+     * @return number of take() calls that had to allocate
+     */
+    public synchronized long getNumAllocated() {
+        return numAllocated;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ *    InstrumentedInstanceStream.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams;
+
+import moa.core.Measurement;
+
+/**
+ * InstrumentedInstanceStream.java
+ *
+ * An InstanceStream that reports measurements about itself (e.g. the ground truth drift of a generator), which an
+ * evaluation task can add to its learning curve next to the evaluator and learner measurements.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public interface InstrumentedInstanceStream extends InstanceStream {
+
+    /**
+     * @return current measurements of the stream, always with the same names in the same order (possibly none)
+     */
+    public Measurement[] getStreamMeasurements();
+}
@@ -0,0 +1,335 @@
+/*
+ *    PrefetchingInstanceStream.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import moa.core.InstancesHeader;
+import moa.core.ObjectRepository;
+import moa.options.AbstractOptionHandler;
+import moa.options.ClassOption;
+import moa.options.IntOption;
+import moa.tasks.TaskMonitor;
+import weka.core.Instance;
+
+/**
+ * PrefetchingInstanceStream.java
+ *
+ * Runs the wrapped stream (a generator, an ARFF file, etc.) on a dedicated producer thread, so generating or parsing
+ * the next instances overlaps with whatever the consumer does with the current one. Instances are handed over through a
+ * bounded single-producer/single-consumer ring: the producer only writes the head index and the consumer only writes
+ * the tail index, so no locks are taken. When the ring is full the producer waits (backpressure), and when it is empty
+ * the consumer waits; both spin briefly, then park until the other side signals them. The number and total duration of
+ * these stalls are counted, to tell whether the producer or the consumer is the bottleneck.
+ *
+ * The sequence of instances is exactly that of the wrapped stream. There must be a single consumer thread.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class PrefetchingInstanceStream extends AbstractOptionHandler implements RecyclingInstanceStream, Closeable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getPurposeString() {
+        return "Reads the wrapped stream ahead on a background thread through a bounded lock-free queue.";
+    }
+
+    public ClassOption streamOption = new ClassOption("stream", 's',
+            "Stream to prefetch.", InstanceStream.class,
+            "generators.InducedRandomNonStationaryDataGenerator");
+
+    public IntOption queueCapacityOption = new IntOption("queueCapacity", 'q',
+            "Maximum number of instances read ahead (rounded up to a power of two)", 1024, 2, 1 << 24);
+
+    protected static final int SPIN_TRIES = 128;
+    protected static final long MAX_PARK_NANOS = 1000000L; // backstop only; waiters are normally unparked
+
+    protected InstanceStream source = null;
+    protected InstancesHeader streamHeader = null;
+    protected transient Instance[] ring = null;
+    protected transient int mask = 0;
+    protected transient AtomicLong head = null;      // next sequence number the producer writes
+    protected transient AtomicLong tail = null;      // next sequence number the consumer reads
+    protected transient volatile boolean producerWaiting = false;
+    protected transient volatile boolean consumerWaiting = false;
+    protected transient volatile boolean sourceExhausted = false;
+    protected transient volatile boolean stopRequested = false;
+    protected transient volatile Throwable producerFailure = null;
+    protected transient Thread producer = null;
+    protected transient Thread consumer = null;
+
+    // Stall counters. Each is written by one thread only.
+    protected transient volatile long producerStalls = 0;
+    protected transient volatile long producerStallNanos = 0;
+    protected transient volatile long consumerStalls = 0;
+    protected transient volatile long consumerStallNanos = 0;
+
+    @Override
+    public void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
+        this.source = (InstanceStream) getPreparedClassOption(this.streamOption);
+        this.streamHeader = this.source.getHeader();
+        int capacity = Integer.highestOneBit(this.queueCapacityOption.getValue() - 1) << 1;
+        this.ring = new Instance[capacity];
+        this.mask = capacity - 1;
+        this.head = new AtomicLong(0);
+        this.tail = new AtomicLong(0);
+        startProducer();
+    }
+
+    /**
+     * Start a producer thread reading from the source at its current position
+     */
+    protected void startProducer() {
+        this.sourceExhausted = false;
+        this.stopRequested = false;
+        this.producerFailure = null;
+        this.producer = new Thread(this::produce, "prefetch-" + this.source.getClass().getSimpleName());
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    /**
+     * Producer thread body: read the source into the ring until it runs out or we are stopped
+     */
+    protected void produce() {
+        try {
+            long h = this.head.get();
+            while (!this.stopRequested && this.source.hasMoreInstances()) {
+                Instance inst = this.source.nextInstance();
+                if (h - this.tail.get() > this.mask && !awaitSpace(h)) {
+                    return;
+                }
+                this.ring[(int) (h & this.mask)] = inst;
+                this.head.set(++h);
+                if (this.consumerWaiting) {
+                    LockSupport.unpark(this.consumer);
+                }
+            }
+        } catch (Throwable t) {
+            this.producerFailure = t;
+        } finally {
+            this.sourceExhausted = true;
+            if (this.consumerWaiting) {
+                LockSupport.unpark(this.consumer);
+            }
+        }
+    }
+
+    /**
+     * Block the producer until the consumer frees a slot
+     *
+     * @param p_head sequence number the producer wants to write
+     * @return false if the producer was stopped meanwhile
+     */
+    protected boolean awaitSpace(long p_head) {
+        long start = System.nanoTime();
+        for (int spin = 0; p_head - this.tail.get() > this.mask; ++spin) {
+            if (this.stopRequested) {
+                return false;
+            }
+            if (spin >= SPIN_TRIES) {
+                this.producerWaiting = true;
+                if (p_head - this.tail.get() > this.mask) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                this.producerWaiting = false;
+            }
+        }
+        this.producerStalls++;
+        this.producerStallNanos += System.nanoTime() - start;
+        return true;
+    }
+
+    /**
+     * Block the consumer until the producer publishes an instance or finishes
+     *
+     * @return true if an instance is available
+     */
+    protected boolean awaitInstance() {
+        long t = this.tail.get();
+        if (this.head.get() > t) {
+            return true;
+        }
+        long start = System.nanoTime();
+        this.consumer = Thread.currentThread();
+        for (int spin = 0; this.head.get() == t; ++spin) {
+            if (this.sourceExhausted) {
+                // The producer publishes its last instance before it flags exhaustion
+                if (this.head.get() > t) {
+                    break;
+                }
+                if (this.producerFailure != null) {
+                    throw new RuntimeException("Prefetching from " + this.source.getClass().getSimpleName() + " failed", this.producerFailure);
+                }
+                return false;
+            }
+            if (spin >= SPIN_TRIES) {
+                this.consumerWaiting = true;
+                if (this.head.get() == t && !this.sourceExhausted) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                this.consumerWaiting = false;
+            }
+        }
+        this.consumerStalls++;
+        this.consumerStallNanos += System.nanoTime() - start;
+        return true;
+    }
+
+    @Override
+    public Instance nextInstance() {
+        if (!awaitInstance()) {
+            return null;
+        }
+        long t = this.tail.get();
+        int slot = (int) (t & this.mask);
+        Instance ret = this.ring[slot];
+        this.ring[slot] = null;
+        this.tail.set(t + 1);
+        if (this.producerWaiting) {
+            LockSupport.unpark(this.producer);
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean hasMoreInstances() {
+        return awaitInstance();
+    }
+
+    @Override
+    public InstancesHeader getHeader() {
+        return this.streamHeader;
+    }
+
+    /**
+     * @return the wrapped stream's (approximate, as it is read concurrently) estimate plus the instances queued
+     */
+    @Override
+    public long estimatedRemainingInstances() {
+        long ret = this.source.estimatedRemainingInstances();
+        return (ret < 0) ? ret : ret + (this.head.get() - this.tail.get());
+    }
+
+    @Override
+    public boolean isRestartable() {
+        return this.source.isRestartable();
+    }
+
+    /**
+     * Stop the producer, discard everything read ahead, restart the wrapped stream and start prefetching it again.
+     * Stall counters start over.
+     */
+    @Override
+    public void restart() {
+        stopProducer();
+        Arrays.fill(this.ring, null);
+        this.head.set(0);
+        this.tail.set(0);
+        this.producerStalls = 0;
+        this.producerStallNanos = 0;
+        this.consumerStalls = 0;
+        this.consumerStallNanos = 0;
+        this.source.restart();
+        startProducer();
+    }
+
+    /**
+     * Stop the producer thread and wait for it to finish
+     */
+    protected void stopProducer() {
+        if (this.producer == null) {
+            return;
+        }
+        this.stopRequested = true;
+        LockSupport.unpark(this.producer);
+        boolean interrupted = false;
+        while (this.producer.isAlive()) {
+            try {
+                this.producer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        this.producer = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop prefetching. The stream is exhausted afterwards (until restarted).
+     */
+    @Override
+    public void close() {
+        stopProducer();
+        this.sourceExhausted = true;
+    }
+
+    /**
+     * @return the wrapped stream's pool, if it recycles instances (the pool is thread-safe)
+     */
+    @Override
+    public InstancePool getInstancePool() {
+        return (this.source instanceof RecyclingInstanceStream) ? ((RecyclingInstanceStream) this.source).getInstancePool() : null;
+    }
+
+    /**
+     * @return number of times the producer found the queue full
+     */
+    public long getProducerStalls() {
+        return producerStalls;
+    }
+
+    /**
+     * @return total time in nanoseconds the producer waited for the consumer
+     */
+    public long getProducerStallNanos() {
+        return producerStallNanos;
+    }
+
+    /**
+     * @return number of times the consumer found the queue empty
+     */
+    public long getConsumerStalls() {
+        return consumerStalls;
+    }
+
+    /**
+     * @return total time in nanoseconds the consumer waited for the producer
+     */
+    public long getConsumerStallNanos() {
+        return consumerStallNanos;
+    }
+
+    @Override
+    public void getDescription(StringBuilder sb, int indent) {
+        if (this.ring != null) {
+            sb.append(String.format("Prefetch queue: %d instances, %d queued\n", this.ring.length, this.head.get() - this.tail.get()));
+            sb.append(String.format("  producer stalls (queue full):  %d, %.3f s\n", this.producerStalls, this.producerStallNanos / 1e9));
+            sb.append(String.format("  consumer stalls (queue empty): %d, %.3f s\n", this.consumerStalls, this.consumerStallNanos / 1e9));
+        }
+    }
+}
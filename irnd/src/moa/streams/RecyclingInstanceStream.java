@@ -0,0 +1,39 @@
+/*
+ *    RecyclingInstanceStream.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams;
+
+/**
+ * RecyclingInstanceStream.java
+ *
+ * An InstanceStream that can overwrite instances its consumer is done with instead of allocating new ones. The
+ * consumer returns instances through the pool; the stream draws from it in nextInstance(). Recycling never changes the
+ * values a stream produces.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public interface RecyclingInstanceStream extends InstanceStream {
+
+    /**
+     * @return pool consumed instances may be offered to, or null if recycling is disabled
+     */
+    public InstancePool getInstancePool();
+}
@@ -0,0 +1,181 @@
+/*
+ *    TransformedInstanceStream.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams;
+
+import java.util.Random;
+import moa.core.InstancesHeader;
+import moa.core.ObjectRepository;
+import moa.options.AbstractOptionHandler;
+import moa.options.ClassOption;
+import moa.options.IntOption;
+import moa.options.ListOption;
+import moa.options.Option;
+import moa.streams.transforms.InstanceTransformStage;
+import moa.tasks.TaskMonitor;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+
+/**
+ * TransformedInstanceStream.java
+ *
+ * Applies a pipeline of transform stages (noise, feature masking, missing values, scaling, label noise, ...) to the
+ * wrapped stream. All stages work in place on one value buffer per instance, one after the other while the buffer is
+ * still in cache, so stacking stages costs no intermediate instances or copies. Instances of a recycling source
+ * (InstancePool.PooledInstance) are transformed directly in their own value array; any other instance is copied once.
+ *
+ * The stages share one random number generator, seeded independently of the wrapped stream, so the transformed
+ * stream is reproducible and the wrapped stream is unchanged by the pipeline.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class TransformedInstanceStream extends AbstractOptionHandler implements RecyclingInstanceStream {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getPurposeString() {
+        return "Applies a pipeline of in-place transform stages (noise, masking, missing values, scaling, label noise) to a stream.";
+    }
+
+    public ClassOption streamOption = new ClassOption("stream", 's',
+            "Stream to transform.", InstanceStream.class,
+            "generators.InducedRandomNonStationaryDataGenerator");
+
+    public ListOption stagesOption = new ListOption("stages", 't',
+            "Semicolon separated transform stages, applied in the given order.",
+            new ClassOption("stage", ' ', "", InstanceTransformStage.class, "GaussianNoiseStage"),
+            new Option[]{
+                new ClassOption("", ' ', "", InstanceTransformStage.class, "GaussianNoiseStage"),
+                new ClassOption("", ' ', "", InstanceTransformStage.class, "MissingValuesStage"),
+                new ClassOption("", ' ', "", InstanceTransformStage.class, "LabelFlipStage")},
+            ';');
+
+    public IntOption randomSeedOption = new IntOption("randomSeed", 'r',
+            "Seed for the random transformations", 1, 0, Integer.MAX_VALUE);
+
+    protected InstanceStream source = null;
+    protected InstancesHeader streamHeader = null;
+    protected InstanceTransformStage[] stages = null;
+    protected Random rng = null;
+    protected long numInPlace = 0;
+    protected long numCopied = 0;
+
+    @Override
+    public void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
+        this.source = (InstanceStream) getPreparedClassOption(this.streamOption);
+        this.streamHeader = this.source.getHeader();
+        Option[] list = this.stagesOption.getList();
+        this.stages = new InstanceTransformStage[list.length];
+        for (int i = 0; i < list.length; ++i) {
+            monitor.setCurrentActivity("Preparing transform stage " + (i + 1) + " of " + list.length + "...", -1.0);
+            this.stages[i] = (InstanceTransformStage) ((ClassOption) list[i]).materializeObject(monitor, repository);
+            this.stages[i].prepareForUse(monitor, repository);
+        }
+        startStages();
+    }
+
+    /**
+     * Reseed the pipeline and bind every stage to the header (stages that draw their setup, e.g. a feature mask, draw
+     * it again from the same seed)
+     */
+    protected void startStages() {
+        this.rng = new Random(this.randomSeedOption.getValue());
+        for (InstanceTransformStage stage : this.stages) {
+            stage.prepare(this.streamHeader, this.rng);
+        }
+        this.numInPlace = 0;
+        this.numCopied = 0;
+    }
+
+    @Override
+    public Instance nextInstance() {
+        Instance inst = this.source.nextInstance();
+        double[] values;
+        if (inst instanceof InstancePool.PooledInstance) {
+            values = ((InstancePool.PooledInstance) inst).values();
+            ++this.numInPlace;
+        } else {
+            // toDoubleArray() copies, and the new instance adopts the copy
+            values = inst.toDoubleArray();
+            inst = new DenseInstance(inst.weight(), values);
+            inst.setDataset(this.streamHeader);
+            ++this.numCopied;
+        }
+        for (InstanceTransformStage stage : this.stages) {
+            stage.apply(values, this.rng);
+        }
+        return inst;
+    }
+
+    @Override
+    public InstancesHeader getHeader() {
+        return this.streamHeader;
+    }
+
+    @Override
+    public long estimatedRemainingInstances() {
+        return this.source.estimatedRemainingInstances();
+    }
+
+    @Override
+    public boolean hasMoreInstances() {
+        return this.source.hasMoreInstances();
+    }
+
+    @Override
+    public boolean isRestartable() {
+        return this.source.isRestartable();
+    }
+
+    @Override
+    public void restart() {
+        this.source.restart();
+        startStages();
+    }
+
+    @Override
+    public InstancePool getInstancePool() {
+        return (this.source instanceof RecyclingInstanceStream) ? ((RecyclingInstanceStream) this.source).getInstancePool() : null;
+    }
+
+    /**
+     * @return number of instances transformed in their own value array
+     */
+    public long getNumInPlace() {
+        return this.numInPlace;
+    }
+
+    /**
+     * @return number of instances that had to be copied before transforming
+     */
+    public long getNumCopied() {
+        return this.numCopied;
+    }
+
+    @Override
+    public void getDescription(StringBuilder sb, int indent) {
+        if (this.stages != null) {
+            sb.append(String.format("Transform pipeline of %d stages: %d instances in place, %d copied\n",
+                    this.stages.length, this.numInPlace, this.numCopied));
+        }
+    }
+}
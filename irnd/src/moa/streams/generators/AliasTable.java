@@ -0,0 +1,125 @@
+/*
+ *    AliasTable.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.generators;
+
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * AliasTable.java
+ *
+ * Walker's alias method (with Vose's stable construction) for sampling from a discrete distribution in O(1): one
+ * uniform integer picks a column, one uniform double picks between the column and its alias. Building the table is
+ * O(n). All arrays are allocated once for the maximum size, so rebuilding allocates nothing.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class AliasTable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    protected final double[] probability;
+    protected final int[] alias;
+    protected final double[] scaled;   // build scratch space
+    protected final int[] small;       // build worklist of under-full columns
+    protected final int[] large;       // build worklist of over-full columns
+    protected int size = 0;
+
+    /**
+     * @param p_capacity maximum number of outcomes
+     */
+    public AliasTable(int p_capacity) {
+        this.probability = new double[p_capacity];
+        this.alias = new int[p_capacity];
+        this.scaled = new double[p_capacity];
+        this.small = new int[p_capacity];
+        this.large = new int[p_capacity];
+    }
+
+    /**
+     * (Re)build the table for outcomes 0 to p_size - 1
+     *
+     * @param p_weights non-negative, not necessarily normalized, weight of each outcome
+     * @param p_size number of outcomes (at most the capacity)
+     * @return false (leaving the table empty) if the weights sum to zero
+     */
+    public boolean build(double[] p_weights, int p_size) {
+        double total = 0;
+        for (int i = 0; i < p_size; ++i) {
+            total += p_weights[i];
+        }
+        if (!(total > 0)) {
+            this.size = 0;
+            return false;
+        }
+        int numSmall = 0;
+        int numLarge = 0;
+        for (int i = 0; i < p_size; ++i) {
+            scaled[i] = p_weights[i] * p_size / total;
+            if (scaled[i] < 1.0) {
+                small[numSmall++] = i;
+            } else {
+                large[numLarge++] = i;
+            }
+        }
+        while (numSmall > 0 && numLarge > 0) {
+            int s = small[--numSmall];
+            int l = large[--numLarge];
+            probability[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+            if (scaled[l] < 1.0) {
+                small[numSmall++] = l;
+            } else {
+                large[numLarge++] = l;
+            }
+        }
+        // Whatever is left is full up to rounding error
+        while (numLarge > 0) {
+            int l = large[--numLarge];
+            probability[l] = 1.0;
+            alias[l] = l;
+        }
+        while (numSmall > 0) {
+            int s = small[--numSmall];
+            probability[s] = 1.0;
+            alias[s] = s;
+        }
+        this.size = p_size;
+        return true;
+    }
+
+    /**
+     * @param p_rng random number generator
+     * @return outcome, 0 to size() - 1, drawn with probability proportional to its weight
+     */
+    public int sample(Random p_rng) {
+        int column = p_rng.nextInt(size);
+        return (p_rng.nextDouble() < probability[column]) ? column : alias[column];
+    }
+
+    /**
+     * @return number of outcomes of the current table (0 if empty)
+     */
+    public int size() {
+        return size;
+    }
+}
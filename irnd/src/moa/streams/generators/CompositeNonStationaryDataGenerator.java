@@ -0,0 +1,364 @@
+/*
+ *    CompositeNonStationaryDataGenerator.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.generators;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import moa.core.InstancesHeader;
+import moa.core.ObjectRepository;
+import moa.options.AbstractOptionHandler;
+import moa.options.ClassOption;
+import moa.options.FlagOption;
+import moa.options.IntOption;
+import moa.options.ListOption;
+import moa.options.Option;
+import moa.options.StringOption;
+import moa.streams.InstanceStream;
+import moa.tasks.TaskMonitor;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * CompositeNonStationaryDataGenerator.java
+ *
+ * Switches between several differently configured IRND generators (e.g. a calm and a heavily drifting regime, or few
+ * versus many classes) that share one header. The stream is cut into regimes at the switch points, and regime r is
+ * served by generator r mod (number of generators). Around each switch point the two regimes can be mixed with a
+ * sigmoid transition, as in MOA's ConceptDriftStream: at instance t the incoming regime is chosen with probability
+ * 1 / (1 + exp(-4 (t - switchPoint) / transitionWidth)).
+ *
+ * By default every generator keeps time with the composite stream, so a regime picks up its drift where it would be
+ * had it been running all along. Generators that are not in use are fast-forwarded (without materializing instances)
+ * on background threads, to where their next regime starts, while the current regime is being served, so a switch
+ * does not stall on catching up. With pauseInactive, an inactive generator instead resumes where it left off and
+ * nothing runs in the background.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class CompositeNonStationaryDataGenerator extends AbstractOptionHandler implements InstanceStream {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getPurposeString() {
+        return "Switches between several IRND generators on a schedule, with optional sigmoid transitions.";
+    }
+
+    public ListOption generatorsOption = new ListOption("generators", 'g',
+            "Semicolon separated generators, used in turn for successive regimes. All must produce the same header.",
+            new ClassOption("generator", ' ', "", InducedRandomNonStationaryDataGenerator.class, "InducedRandomNonStationaryDataGenerator"),
+            new Option[]{
+                new ClassOption("", ' ', "", InducedRandomNonStationaryDataGenerator.class, "InducedRandomNonStationaryDataGenerator"),
+                new ClassOption("", ' ', "", InducedRandomNonStationaryDataGenerator.class, "InducedRandomNonStationaryDataGenerator -s 2 -E 1 -e 1 -v 1")},
+            ';');
+
+    public IntOption regimeLengthOption = new IntOption("regimeLength", 'L',
+            "Number of instances per regime, if no switchPoints are given", 10000, 1, Integer.MAX_VALUE);
+
+    public StringOption switchPointsOption = new StringOption("switchPoints", 'S',
+            "Comma separated, increasing instance indices at which the next regime starts (overrides regimeLength)", "");
+
+    public IntOption transitionWidthOption = new IntOption("transitionWidth", 'w',
+            "Width (in instances) of the sigmoid transition around each switch point (0 = abrupt)", 0, 0, Integer.MAX_VALUE);
+
+    public IntOption randomSeedOption = new IntOption("randomSeed", 'r',
+            "Seed for choosing between the regimes during a transition", 1, 0, Integer.MAX_VALUE);
+
+    public FlagOption pauseInactiveOption = new FlagOption("pauseInactive", 'p',
+            "Freeze inactive generators instead of keeping them in time with the stream");
+
+    public IntOption backgroundThreadsOption = new IntOption("backgroundThreads", 't',
+            "Threads that fast-forward inactive generators ahead of their next regime (0 = catch up at the switch)", 1, 0, 64);
+
+    protected InducedRandomNonStationaryDataGenerator[] generators = null;
+    protected InstancesHeader streamHeader = null;
+    protected long[] switchPoints = null;      // explicit schedule, or null for every regimeLength instances
+    protected Random rng = null;
+    protected long instanceIndex = 0;          // index of the next instance
+    protected int regime = 0;                  // regime whose [start, next switch point) holds instanceIndex
+    protected long regimeSettled = 0;          // index at which the transition into the current regime is over
+    protected int settledRegime = -1;          // last regime whose successor was prepared
+
+    // Background fast-forwarding
+    protected transient ExecutorService advanceWorkers = null;
+    protected transient Future<?>[] pendingAdvances = null;
+    protected long catchUpStalls = 0;
+    protected long catchUpStallNanos = 0;
+
+    @Override
+    public void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
+        Option[] list = this.generatorsOption.getList();
+        if (list.length == 0) {
+            throw new IllegalArgumentException("At least one generator is required");
+        }
+        this.generators = new InducedRandomNonStationaryDataGenerator[list.length];
+        for (int i = 0; i < list.length; ++i) {
+            monitor.setCurrentActivity("Preparing generator " + (i + 1) + " of " + list.length + "...", -1.0);
+            this.generators[i] = (InducedRandomNonStationaryDataGenerator) ((ClassOption) list[i]).materializeObject(monitor, repository);
+            this.generators[i].prepareForUse(monitor, repository);
+        }
+        Instances first = this.generators[0].getHeader();
+        for (int i = 1; i < this.generators.length; ++i) {
+            String msg = first.equalHeadersMsg(this.generators[i].getHeader());
+            if (msg != null) {
+                throw new IllegalArgumentException("Generator " + (i + 1) + " does not share the header of generator 1: " + msg);
+            }
+        }
+        this.streamHeader = new InstancesHeader(new Instances(first, 0));
+        this.streamHeader.setRelationName("CompositeNonStationaryDrift");
+        this.switchPoints = parseSwitchPoints(this.switchPointsOption.getValue());
+        this.pendingAdvances = new Future<?>[this.generators.length];
+        startRegimes();
+    }
+
+    /**
+     * @param p_spec comma separated, strictly increasing, positive instance indices
+     * @return switch points, or null if none are given
+     */
+    protected static long[] parseSwitchPoints(String p_spec) {
+        if (p_spec == null || p_spec.trim().isEmpty()) {
+            return null;
+        }
+        String[] parts = p_spec.split(",");
+        long[] ret = new long[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            ret[i] = Long.parseLong(parts[i].trim());
+            if (ret[i] <= ((i > 0) ? ret[i - 1] : 0)) {
+                throw new IllegalArgumentException("Switch points must be positive and increasing: " + p_spec);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param p_regime regime index (0 is the first)
+     * @return instance index at which the regime starts, or Long.MAX_VALUE if the schedule never reaches it
+     */
+    protected long regimeStart(int p_regime) {
+        if (p_regime == 0) {
+            return 0;
+        }
+        if (this.switchPoints != null) {
+            return (p_regime <= this.switchPoints.length) ? this.switchPoints[p_regime - 1] : Long.MAX_VALUE;
+        }
+        return (long) p_regime * this.regimeLengthOption.getValue();
+    }
+
+    /**
+     * @param p_regime regime index
+     * @return generator serving the regime
+     */
+    protected int generatorOf(int p_regime) {
+        return p_regime % this.generators.length;
+    }
+
+    /**
+     * Position the composite stream at instance 0 of regime 0 (sub-generators must already be at their start)
+     */
+    protected void startRegimes() {
+        this.rng = new Random(this.randomSeedOption.getValue());
+        this.instanceIndex = 0;
+        this.regime = 0;
+        this.regimeSettled = 0;
+        this.settledRegime = 0;
+        settleRegime();
+    }
+
+    /**
+     * The transition into the current regime is over: fast-forward the generator of the next regime to where it
+     * will first be needed
+     */
+    protected void settleRegime() {
+        long nextStart = regimeStart(this.regime + 1);
+        int next = generatorOf(this.regime + 1);
+        if (this.pauseInactiveOption.isSet() || nextStart == Long.MAX_VALUE || next == generatorOf(this.regime)
+                || this.backgroundThreadsOption.getValue() == 0) {
+            return;
+        }
+        final long target = Math.max(this.instanceIndex, nextStart - this.transitionWidthOption.getValue() / 2);
+        final InducedRandomNonStationaryDataGenerator g = this.generators[next];
+        awaitAdvance(next);
+        if (this.advanceWorkers == null) {
+            this.advanceWorkers = Executors.newFixedThreadPool(this.backgroundThreadsOption.getValue(), (Runnable r) -> {
+                Thread t = new Thread(r, "IRND-composite-advance");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        this.pendingAdvances[next] = this.advanceWorkers.submit(() -> {
+            if (g.getInstanceIndex() < target) {
+                g.skipTo(target);
+            }
+        });
+    }
+
+    /**
+     * Wait for a background fast-forward of a generator, if one is running
+     *
+     * @param p_generator generator index
+     */
+    protected void awaitAdvance(int p_generator) {
+        Future<?> pending = this.pendingAdvances[p_generator];
+        if (pending == null) {
+            return;
+        }
+        this.pendingAdvances[p_generator] = null;
+        if (!pending.isDone()) {
+            long start = System.nanoTime();
+            ++this.catchUpStalls;
+            waitFor(pending);
+            this.catchUpStallNanos += System.nanoTime() - start;
+        } else {
+            waitFor(pending);
+        }
+    }
+
+    /**
+     * @param p_future background task to wait for (rethrowing its failure)
+     */
+    protected static void waitFor(Future<?> p_future) {
+        try {
+            p_future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while advancing a generator", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to advance generator", e.getCause());
+        }
+    }
+
+    /**
+     * @return sigmoid probability that instance instanceIndex comes from the later of two regimes switching at p_switch
+     */
+    protected double transitionProbability(long p_switch) {
+        return 1.0 / (1.0 + Math.exp(-4.0 * (this.instanceIndex - p_switch) / this.transitionWidthOption.getValue()));
+    }
+
+    /**
+     * @return regime the next instance is drawn from, advancing the schedule as needed
+     */
+    protected int selectRegime() {
+        while (this.instanceIndex >= regimeStart(this.regime + 1)) {
+            ++this.regime;
+            this.regimeSettled = regimeStart(this.regime) + (this.transitionWidthOption.getValue() + 1) / 2;
+        }
+        int halfWidth = this.transitionWidthOption.getValue() / 2;
+        long nextStart = regimeStart(this.regime + 1);
+        if (halfWidth > 0 && nextStart != Long.MAX_VALUE && this.instanceIndex >= nextStart - halfWidth) {
+            return (this.rng.nextDouble() < transitionProbability(nextStart)) ? this.regime + 1 : this.regime;
+        }
+        if (this.instanceIndex < this.regimeSettled) {
+            return (this.rng.nextDouble() < transitionProbability(regimeStart(this.regime))) ? this.regime : this.regime - 1;
+        }
+        if (this.settledRegime != this.regime) {
+            this.settledRegime = this.regime;
+            settleRegime();
+        }
+        return this.regime;
+    }
+
+    @Override
+    public Instance nextInstance() {
+        int g = generatorOf(selectRegime());
+        InducedRandomNonStationaryDataGenerator generator = this.generators[g];
+        awaitAdvance(g);
+        if (!this.pauseInactiveOption.isSet() && generator.getInstanceIndex() < this.instanceIndex) {
+            // Not prepared in the background (e.g. during a transition): catch up right here
+            long start = System.nanoTime();
+            ++this.catchUpStalls;
+            generator.skipTo(this.instanceIndex);
+            this.catchUpStallNanos += System.nanoTime() - start;
+        }
+        Instance inst = generator.nextInstance();
+        inst.setDataset(this.streamHeader);
+        ++this.instanceIndex;
+        return inst;
+    }
+
+    /**
+     * @return index of the next instance of the composite stream
+     */
+    public long getInstanceIndex() {
+        return this.instanceIndex;
+    }
+
+    /**
+     * @return number of times a generator had to be caught up (or waited for) when it was needed
+     */
+    public long getCatchUpStalls() {
+        return this.catchUpStalls;
+    }
+
+    /**
+     * @return total time in nanoseconds spent catching up generators when they were needed
+     */
+    public long getCatchUpStallNanos() {
+        return this.catchUpStallNanos;
+    }
+
+    @Override
+    public InstancesHeader getHeader() {
+        return this.streamHeader;
+    }
+
+    @Override
+    public long estimatedRemainingInstances() {
+        return -1;
+    }
+
+    @Override
+    public boolean hasMoreInstances() {
+        return true;
+    }
+
+    @Override
+    public boolean isRestartable() {
+        return true;
+    }
+
+    @Override
+    public void restart() {
+        for (int i = 0; i < this.generators.length; ++i) {
+            Future<?> pending = this.pendingAdvances[i];
+            this.pendingAdvances[i] = null;
+            if (pending != null) {
+                waitFor(pending);
+            }
+            this.generators[i].restart();
+        }
+        this.catchUpStalls = 0;
+        this.catchUpStallNanos = 0;
+        startRegimes();
+    }
+
+    @Override
+    public void getDescription(StringBuilder sb, int indent) {
+        if (this.generators != null) {
+            sb.append(String.format("Composite of %d generators, regime %d at instance %d\n", this.generators.length,
+                    this.regime, this.instanceIndex));
+            sb.append(String.format("  catch-up stalls: %d, %.3f s\n", this.catchUpStalls, this.catchUpStallNanos / 1e9));
+        }
+    }
+}
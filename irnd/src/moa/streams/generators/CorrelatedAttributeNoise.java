@@ -0,0 +1,254 @@
+/*
+ *    CorrelatedAttributeNoise.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.generators;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * CorrelatedAttributeNoise.java
+ *
+ * Correlated attribute noise of one concept. The noise of the d features is a standard multivariate normal with
+ * correlation matrix R = W W' + diag(1 - rho), where every row of the d x r loading matrix W has squared norm rho, so
+ * two features are correlated by the cosine of their loading rows times rho. A sample is L z, where z holds d
+ * independent standard normals and L is the (lower triangular) Cholesky factor of R.
+ *
+ * L is cached in packed row-major form and only refactored (O(d^3/6)) when the covariance drifts: every sample, a
+ * loading row is redrawn with the given probability (scheduled with geometric skips, like lazy velocity shifts). A
+ * sample then costs one triangular matrix-vector product, O(d^2/2) multiply-adds over contiguous rows. Both L and the
+ * scratch vectors take O(d^2) and O(d) memory per concept, so this is meant for a few hundred features.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class CorrelatedAttributeNoise implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    protected final int numFeatures;
+    protected final int numFactors;
+    protected final double correlation;          // rho, the squared norm of every loading row
+    protected final double probCovarianceShift;  // per sample
+    protected final double[] loadings;           // [numFeatures * numFactors], row-major
+    protected final double[] cholesky;           // packed lower triangle, row i starts at i * (i + 1) / 2
+    protected final double[] standardNormals;    // [numFeatures] z of the last sample
+    protected final double[] noise;              // [numFeatures] L z of the last sample
+    protected boolean factorStale = true;
+    protected long samplesUntilShift;
+    protected long numFactorizations = 0;
+
+    /**
+     * @param p_numFeatures number of (non-class) features d
+     * @param p_numFactors number of latent factors r (rank of the correlation structure)
+     * @param p_correlation rho, in [0, 1): the largest absolute correlation between two features
+     * @param p_probCovarianceShift probability per sample that one loading row is redrawn
+     * @param p_rng random number generator to draw the initial loadings and shift schedule with
+     */
+    public CorrelatedAttributeNoise(int p_numFeatures, int p_numFactors, double p_correlation,
+            double p_probCovarianceShift, Random p_rng) {
+        this.numFeatures = p_numFeatures;
+        this.numFactors = Math.max(1, p_numFactors);
+        this.correlation = p_correlation;
+        this.probCovarianceShift = p_probCovarianceShift;
+        this.loadings = new double[numFeatures * numFactors];
+        this.cholesky = new double[numFeatures * (numFeatures + 1) / 2];
+        this.standardNormals = new double[numFeatures];
+        this.noise = new double[numFeatures];
+        for (int i = 0; i < numFeatures; ++i) {
+            drawLoadings(i, p_rng);
+        }
+        this.samplesUntilShift = DriftingExemplarAttribute.velocityShiftSkip(p_rng, probCovarianceShift);
+    }
+
+    /**
+     * Redraw the loading row of one feature: a uniformly random direction scaled to squared norm rho
+     *
+     * @param p_feature feature index
+     * @param p_rng random number generator
+     */
+    protected final void drawLoadings(int p_feature, Random p_rng) {
+        int base = p_feature * numFactors;
+        double norm = 0;
+        for (int k = 0; k < numFactors; ++k) {
+            double g = p_rng.nextGaussian();
+            loadings[base + k] = g;
+            norm += g * g;
+        }
+        double scale = (norm > 0) ? Math.sqrt(correlation / norm) : 0;
+        for (int k = 0; k < numFactors; ++k) {
+            loadings[base + k] *= scale;
+        }
+        this.factorStale = true;
+    }
+
+    /**
+     * Recompute the packed Cholesky factor of R (Cholesky-Banachiewicz, row by row). R has a unit diagonal and is
+     * positive definite as long as rho is below 1.
+     */
+    protected void factor() {
+        for (int i = 0; i < numFeatures; ++i) {
+            int rowI = i * (i + 1) / 2;
+            int loadI = i * numFactors;
+            for (int j = 0; j <= i; ++j) {
+                int rowJ = j * (j + 1) / 2;
+                double s;
+                if (i == j) {
+                    s = 1.0;
+                } else {
+                    s = 0;
+                    int loadJ = j * numFactors;
+                    for (int k = 0; k < numFactors; ++k) {
+                        s += loadings[loadI + k] * loadings[loadJ + k];
+                    }
+                }
+                for (int k = 0; k < j; ++k) {
+                    s -= cholesky[rowI + k] * cholesky[rowJ + k];
+                }
+                cholesky[rowI + j] = (i == j) ? Math.sqrt(Math.max(s, Double.MIN_NORMAL)) : s / cholesky[rowJ + j];
+            }
+        }
+        this.factorStale = false;
+        ++numFactorizations;
+    }
+
+    /**
+     * Draw the d standard normals of the next sample, refactoring first if the covariance drifted. The correlated
+     * values are then obtained with correlateAll() or, for a subset of the features, correlate().
+     *
+     * @param p_rng random number generator
+     */
+    public void drawStandardNormals(Random p_rng) {
+        if (factorStale) {
+            factor();
+        }
+        for (int i = 0; i < numFeatures; ++i) {
+            standardNormals[i] = p_rng.nextGaussian();
+        }
+    }
+
+    /**
+     * @return L z for every feature (a scratch array owned by this object, overwritten by the next call)
+     */
+    public double[] correlateAll() {
+        for (int i = 0; i < numFeatures; ++i) {
+            noise[i] = correlate(i);
+        }
+        return noise;
+    }
+
+    /**
+     * @param p_feature feature index
+     * @return row p_feature of L z, i.e. the standard normal noise of one feature
+     */
+    public double correlate(int p_feature) {
+        final double[] l = cholesky;
+        final double[] z = standardNormals;
+        int row = p_feature * (p_feature + 1) / 2;
+        int n = p_feature + 1;
+        // Four independent partial sums, so the multiply-adds pipeline instead of waiting on each other
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int k = 0;
+        for (; k + 3 < n; k += 4) {
+            s0 += l[row + k] * z[k];
+            s1 += l[row + k + 1] * z[k + 1];
+            s2 += l[row + k + 2] * z[k + 2];
+            s3 += l[row + k + 3] * z[k + 3];
+        }
+        for (; k < n; ++k) {
+            s0 += l[row + k] * z[k];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Count one sample towards the covariance drift schedule, and redraw a loading row when it is due
+     *
+     * @param p_rng random number generator
+     * @return index of the feature whose loadings were redrawn, or -1
+     */
+    public int step(Random p_rng) {
+        if (--samplesUntilShift > 0) {
+            return -1;
+        }
+        int f = p_rng.nextInt(numFeatures);
+        drawLoadings(f, p_rng);
+        this.samplesUntilShift = DriftingExemplarAttribute.velocityShiftSkip(p_rng, probCovarianceShift);
+        return f;
+    }
+
+    /**
+     * @return number of Cholesky factorizations computed so far
+     */
+    public long getNumFactorizations() {
+        return numFactorizations;
+    }
+
+    /**
+     * @param p_a feature index
+     * @param p_b feature index
+     * @return current correlation of the noise of two features
+     */
+    public double getCorrelation(int p_a, int p_b) {
+        if (p_a == p_b) {
+            return 1.0;
+        }
+        double s = 0;
+        for (int k = 0; k < numFactors; ++k) {
+            s += loadings[p_a * numFactors + k] * loadings[p_b * numFactors + k];
+        }
+        return s;
+    }
+
+    /**
+     * @return estimated heap size in bytes (see DriftingExemplarInstance.estimateFootprint)
+     */
+    public long estimateFootprint() {
+        return DriftingExemplarInstance.objectBytes(56) + DriftingExemplarInstance.arrayBytes(loadings.length, 8)
+                + DriftingExemplarInstance.arrayBytes(cholesky.length, 8) + 2 * DriftingExemplarInstance.arrayBytes(numFeatures, 8);
+    }
+
+    /**
+     * Write the drifting state: the loadings and the shift schedule. The factor is recomputed on restore.
+     *
+     * @param p_out destination
+     * @throws IOException on write failure
+     */
+    public void writeState(DataOutput p_out) throws IOException {
+        p_out.writeLong(samplesUntilShift);
+        for (double w : loadings) {
+            p_out.writeDouble(w);
+        }
+    }
+
+    /**
+     * @param p_in source of state written by writeState()
+     * @throws IOException on read failure
+     */
+    public void readState(DataInput p_in) throws IOException {
+        this.samplesUntilShift = p_in.readLong();
+        for (int i = 0; i < loadings.length; ++i) {
+            loadings[i] = p_in.readDouble();
+        }
+        this.factorStale = true;
+    }
+}
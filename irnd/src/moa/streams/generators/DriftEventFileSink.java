@@ -0,0 +1,165 @@
+/*
+ *    DriftEventFileSink.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.generators;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * DriftEventFileSink.java
+ *
+ * Writes drift events as CSV lines (instance,concept,event,attribute). Numbers are formatted straight into a byte
+ * buffer, so writing an event allocates nothing.
+ *
+ * There is no end-of-stream notification, so one shared shutdown hook drains the source log of every sink that is
+ * still open and closes it. Open sinks are only weakly referenced, so a sink whose generator has been dropped can still
+ * be collected.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class DriftEventFileSink implements DriftEventListener, Closeable {
+
+    protected static final byte[][] TYPE_BYTES = new byte[DriftEventLog.TYPE_NAMES.length][];
+
+    static {
+        for (int i = 0; i < TYPE_BYTES.length; ++i) {
+            TYPE_BYTES[i] = DriftEventLog.TYPE_NAMES[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    protected static final Set<DriftEventFileSink> OPEN_SINKS =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<DriftEventFileSink, Boolean>()));
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(DriftEventFileSink::closeOpenSinks, "IRND-drift-event-flush"));
+    }
+
+    protected final OutputStream out;
+    protected final DriftEventLog source;
+    protected boolean closed = false;
+    protected final byte[] buffer = new byte[1 << 16];
+    protected final byte[] digits = new byte[20];
+    protected int length = 0;
+
+    /**
+     * @param p_file file to (over)write
+     * @param p_source log this sink listens to, drained at exit if the sink is still open (or null)
+     * @throws IOException if the file cannot be created
+     */
+    public DriftEventFileSink(File p_file, DriftEventLog p_source) throws IOException {
+        this.out = new FileOutputStream(p_file);
+        this.source = p_source;
+        byte[] header = "instance,concept,event,attribute\n".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(header, 0, buffer, 0, header.length);
+        this.length = header.length;
+        OPEN_SINKS.add(this);
+    }
+
+    @Override
+    public void driftEvent(long p_instanceIndex, int p_conceptId, int p_type, int p_attributeIndex) {
+        if (buffer.length - length < 128) {
+            endOfBatch();
+        }
+        appendLong(p_instanceIndex);
+        buffer[length++] = ',';
+        appendLong(p_conceptId);
+        buffer[length++] = ',';
+        System.arraycopy(TYPE_BYTES[p_type], 0, buffer, length, TYPE_BYTES[p_type].length);
+        length += TYPE_BYTES[p_type].length;
+        buffer[length++] = ',';
+        appendLong(p_attributeIndex);
+        buffer[length++] = '\n';
+    }
+
+    /**
+     * Append the decimal digits of a number to the buffer
+     */
+    protected void appendLong(long p_value) {
+        long v = p_value;
+        if (v < 0) {
+            buffer[length++] = '-';
+            v = -v;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v > 0);
+        while (n > 0) {
+            buffer[length++] = digits[--n];
+        }
+    }
+
+    @Override
+    public void endOfBatch() {
+        try {
+            out.write(buffer, 0, length);
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write drift events", e);
+        }
+        length = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        OPEN_SINKS.remove(this);
+        endOfBatch();
+        out.close();
+    }
+
+    /**
+     * Shutdown hook: hand the events still pending in each source log to its listeners, then close every open sink
+     */
+    protected static void closeOpenSinks() {
+        ArrayList<DriftEventFileSink> sinks;
+        synchronized (OPEN_SINKS) {
+            sinks = new ArrayList<>(OPEN_SINKS);
+        }
+        for (DriftEventFileSink sink : sinks) {
+            try {
+                if (sink.source != null) {
+                    synchronized (sink.source) {
+                        sink.source.drain();
+                        sink.close();
+                    }
+                } else {
+                    sink.close();
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Unable to flush drift events: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *    DriftEventListener.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.generators;
+
+/**
+ * DriftEventListener.java
+ *
+ * Receives drift events drained from a DriftEventLog. Events are handed over as primitives, so draining allocates
+ * nothing.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public interface DriftEventListener {
+
+    /**
+     * @param p_instanceIndex stream index of the first instance affected by the event
+     * @param p_conceptId concept (class) the event applies to
+     * @param p_type event type, one of the DriftEventLog constants
+     * @param p_attributeIndex attribute the event applies to, or -1 for concept events
+     */
+    public void driftEvent(long p_instanceIndex, int p_conceptId, int p_type, int p_attributeIndex);
+
+    /**
+     * Called after each drain, e.g. to flush buffered output
+     */
+    public void endOfBatch();
+}
@@ -0,0 +1,176 @@
+/*
+ *    DriftEventLog.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.generators;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DriftEventLog.java
+ *
+ * Ground truth side channel of the drift a generator induces: concept (class) activation and deactivation, feature
+ * enabling and disabling, attribute velocity shifts, and covariance shifts. Events are stored in a preallocated ring
+ * of primitive arrays, so recording an event allocates nothing. When the ring fills up it is drained into the
+ * registered listeners; if there are none, the oldest events are overwritten (and counted as dropped), so a consumer
+ * that polls with drain(listener) only needs to keep up with the ring size.
+ *
+ * Recording is synchronized, since concepts generate (and drift) on worker threads in parallel mode. Events from
+ * different concepts may then be logged slightly out of instance index order.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class DriftEventLog {
+
+    public static final int CONCEPT_ACTIVATED = 0;
+    public static final int CONCEPT_DEACTIVATED = 1;
+    public static final int FEATURE_ENABLED = 2;
+    public static final int FEATURE_DISABLED = 3;
+    public static final int VELOCITY_SHIFT = 4;
+    public static final int COVARIANCE_SHIFT = 5;
+    protected static final String[] TYPE_NAMES = {"ConceptActivated", "ConceptDeactivated", "FeatureEnabled",
+        "FeatureDisabled", "VelocityShift", "CovarianceShift"};
+
+    protected final long[] instanceIndices;
+    protected final int[] conceptIds;
+    protected final byte[] types;
+    protected final int[] attributeIndices;
+    protected final int mask;
+    protected long head = 0;      // sequence number of the next event to write
+    protected long tail = 0;      // sequence number of the oldest event not yet drained
+    protected long dropped = 0;
+    protected final List<DriftEventListener> listeners = new ArrayList<>();
+
+    /**
+     * @param p_capacity number of events held before the ring is drained (rounded up to a power of two)
+     */
+    public DriftEventLog(int p_capacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, p_capacity) - 1) << 1;
+        this.instanceIndices = new long[capacity];
+        this.conceptIds = new int[capacity];
+        this.types = new byte[capacity];
+        this.attributeIndices = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @param p_type event type constant
+     * @return event type name
+     */
+    public static String getTypeName(int p_type) {
+        return TYPE_NAMES[p_type];
+    }
+
+    /**
+     * @param p_listener listener to receive every event drained from now on
+     */
+    public synchronized void addListener(DriftEventListener p_listener) {
+        this.listeners.add(p_listener);
+    }
+
+    /**
+     * @param p_listener listener to stop notifying
+     */
+    public synchronized void removeListener(DriftEventListener p_listener) {
+        this.listeners.remove(p_listener);
+    }
+
+    /**
+     * Record an event
+     *
+     * @param p_instanceIndex stream index of the first instance affected by the event
+     * @param p_conceptId concept (class) the event applies to
+     * @param p_type event type constant
+     * @param p_attributeIndex attribute the event applies to, or -1 for concept events
+     */
+    public synchronized void record(long p_instanceIndex, int p_conceptId, int p_type, int p_attributeIndex) {
+        if (head - tail > mask) {
+            if (!listeners.isEmpty()) {
+                drain();
+            } else {
+                ++tail;
+                ++dropped;
+            }
+        }
+        int slot = (int) (head & mask);
+        instanceIndices[slot] = p_instanceIndex;
+        conceptIds[slot] = p_conceptId;
+        types[slot] = (byte) p_type;
+        attributeIndices[slot] = p_attributeIndex;
+        ++head;
+    }
+
+    /**
+     * Hand every pending event to the registered listeners
+     *
+     * @return number of events drained
+     */
+    public synchronized int drain() {
+        int ret = (int) (head - tail);
+        for (DriftEventListener l : listeners) {
+            for (long seq = tail; seq < head; ++seq) {
+                int slot = (int) (seq & mask);
+                l.driftEvent(instanceIndices[slot], conceptIds[slot], types[slot], attributeIndices[slot]);
+            }
+            l.endOfBatch();
+        }
+        tail = head;
+        return ret;
+    }
+
+    /**
+     * Hand every pending event to one consumer (e.g. a poller that is not a registered listener)
+     *
+     * @param p_consumer receiver of the events
+     * @return number of events drained
+     */
+    public synchronized int drain(DriftEventListener p_consumer) {
+        int ret = (int) (head - tail);
+        for (long seq = tail; seq < head; ++seq) {
+            int slot = (int) (seq & mask);
+            p_consumer.driftEvent(instanceIndices[slot], conceptIds[slot], types[slot], attributeIndices[slot]);
+        }
+        p_consumer.endOfBatch();
+        tail = head;
+        return ret;
+    }
+
+    /**
+     * Discard all pending events (e.g. when the generator restarts)
+     */
+    public synchronized void clear() {
+        tail = head;
+    }
+
+    /**
+     * @return number of events recorded but not drained yet
+     */
+    public synchronized int pending() {
+        return (int) (head - tail);
+    }
+
+    /**
+     * @return number of events overwritten before anyone drained them
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+}
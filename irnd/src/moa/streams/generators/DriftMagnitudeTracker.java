@@ -0,0 +1,169 @@
+/*
+ *    DriftMagnitudeTracker.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.generators;
+
+import java.util.Arrays;
+import weka.core.Utils;
+
+/**
+ * DriftMagnitudeTracker.java
+ *
+ * Ground truth magnitude of the drift of one concept since the start of the current window: the KL divergence between
+ * the GMM of every attribute at the window start and now, summed over the attributes, and the Euclidean norm of all
+ * component velocities.
+ *
+ * The KL divergence of two mixtures has no closed form, so each attribute uses the average KL divergence of its
+ * matched components (an upper bound of the mixture divergence, since every component keeps its weight). The
+ * components of an attribute share their variance, so each term is VectorDistances.KLDiverganceGaussian() with equal
+ * variances, (m - m0)^2 / (2 var), computed inline. Every term is cached, so a moved component or a changed attribute
+ * updates the sums in O(1) or O(GMM size) respectively.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class DriftMagnitudeTracker {
+
+    protected final int[] gmmStart;          // [numFeatures + 1] offset of each feature's components (may be shared)
+    protected final double[] termWeights;    // [numComponents] 1 / (2 var * GMM size of the feature)
+    protected final double[] windowMeans;    // [numComponents] component means at the window start
+    protected final double[] terms;          // [numComponents] current KL term of each component
+    protected final double[] velocitySquares; // [numFeatures] squared velocity norm of each feature
+    protected double divergence = 0;
+    protected double velocitySquareSum = 0;
+
+    /**
+     * @param p_gmmStart offset of each feature's components in the flat component index, plus the total at the end
+     * @param p_variance noise of the concept (the standard deviation of every component)
+     */
+    public DriftMagnitudeTracker(int[] p_gmmStart, double p_variance) {
+        int numFeatures = p_gmmStart.length - 1;
+        int numComponents = p_gmmStart[numFeatures];
+        this.gmmStart = p_gmmStart;
+        this.termWeights = new double[numComponents];
+        this.windowMeans = new double[numComponents];
+        this.terms = new double[numComponents];
+        this.velocitySquares = new double[numFeatures];
+        double var = Math.max(p_variance * p_variance, Utils.SMALL);
+        for (int i = 0; i < numFeatures; ++i) {
+            for (int c = gmmStart[i]; c < gmmStart[i + 1]; ++c) {
+                this.termWeights[c] = 1.0 / (2 * var * (gmmStart[i + 1] - gmmStart[i]));
+            }
+        }
+    }
+
+    /**
+     * Start a new window: the current state of every feature becomes the reference
+     */
+    public void startWindow() {
+        this.divergence = 0;
+        Arrays.fill(this.terms, 0);
+    }
+
+    /**
+     * Set the window start state of one feature (call for every feature after startWindow())
+     *
+     * @param p_feature feature index
+     * @param p_means component means, the first one at p_from
+     * @param p_velocities component velocities, the first one at p_from
+     * @param p_from offset of the feature's first component in both arrays
+     */
+    public void setWindowState(int p_feature, double[] p_means, double[] p_velocities, int p_from) {
+        int c0 = gmmStart[p_feature];
+        System.arraycopy(p_means, p_from, windowMeans, c0, gmmStart[p_feature + 1] - c0);
+        updateVelocity(p_feature, p_velocities, p_from);
+    }
+
+    /**
+     * One component moved (its velocity, at most, changed sign): O(1)
+     *
+     * @param p_component flat component index
+     * @param p_mean new mean of the component
+     */
+    public void componentMoved(int p_component, double p_mean) {
+        double d = p_mean - windowMeans[p_component];
+        double t = d * d * termWeights[p_component];
+        divergence += t - terms[p_component];
+        terms[p_component] = t;
+    }
+
+    /**
+     * @param p_feature feature index
+     * @param p_k component of the feature that moved
+     * @param p_mean new mean of the component
+     */
+    public void componentMoved(int p_feature, int p_k, double p_mean) {
+        componentMoved(gmmStart[p_feature] + p_k, p_mean);
+    }
+
+    /**
+     * Any component means and velocities of a feature changed: O(GMM size)
+     *
+     * @param p_feature feature index
+     * @param p_means component means, the first one at p_from
+     * @param p_velocities component velocities, the first one at p_from
+     * @param p_from offset of the feature's first component in both arrays
+     */
+    public void featureChanged(int p_feature, double[] p_means, double[] p_velocities, int p_from) {
+        int c0 = gmmStart[p_feature];
+        for (int c = c0; c < gmmStart[p_feature + 1]; ++c) {
+            componentMoved(c, p_means[p_from + c - c0]);
+        }
+        updateVelocity(p_feature, p_velocities, p_from);
+    }
+
+    /**
+     * @param p_feature feature index
+     * @param p_velocities component velocities, the first one at p_from
+     * @param p_from offset of the feature's first component
+     */
+    protected void updateVelocity(int p_feature, double[] p_velocities, int p_from) {
+        double s = 0;
+        for (int k = p_from; k < p_from + gmmStart[p_feature + 1] - gmmStart[p_feature]; ++k) {
+            s += p_velocities[k] * p_velocities[k];
+        }
+        velocitySquareSum += s - velocitySquares[p_feature];
+        velocitySquares[p_feature] = s;
+    }
+
+    /**
+     * @return KL divergence of the concept since the window start, summed over the attributes
+     */
+    public double getDivergence() {
+        // Incremental sums may drift slightly below zero by rounding
+        return Math.max(0, divergence);
+    }
+
+    /**
+     * @return Euclidean norm of all component velocities of the concept
+     */
+    public double getVelocityNorm() {
+        return Math.sqrt(Math.max(0, velocitySquareSum));
+    }
+
+    /**
+     * @return estimated heap size in bytes (see DriftingExemplarInstance.estimateFootprint). A shared component layout
+     * is not counted.
+     */
+    public long estimateFootprint() {
+        return DriftingExemplarInstance.objectBytes(48) + 3 * DriftingExemplarInstance.arrayBytes(terms.length, 8)
+                + DriftingExemplarInstance.arrayBytes(velocitySquares.length, 8);
+    }
+}
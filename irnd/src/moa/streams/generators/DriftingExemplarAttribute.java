@@ -18,6 +18,9 @@
  */
 package moa.streams.generators;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Random;
@@ -51,6 +54,13 @@ public class DriftingExemplarAttribute implements Copyable, Serializable, Revisi
     protected double[] velocity;
     protected double probabilityOfVelocityShift = 0;
     final protected boolean reflectOffBoundaries = true;
+    // Lazy drift state: means are only brought up to date (in closed form) when read
+    protected boolean lazyDrift = false;
+    protected long lastUpdateTime = 0;
+    protected long nextVelocityShiftTime = Long.MAX_VALUE;
+    // Optional ground truth of lazy velocity shifts (eager shifts are reported by the exemplar)
+    protected transient DriftEventLog eventLog = null;
+    protected int conceptId = -1;
     Random rng;
 
     /**
@@ -109,19 +119,23 @@ public class DriftingExemplarAttribute implements Copyable, Serializable, Revisi
     }
 
     /**
-     * Produces a shallow copy of this attribute and deep copy of other aspects.
+     * Produces a shallow copy of this attribute and deep copy of other aspects. The WEKA Attribute is immutable schema
+     * metadata once the stream header is built, so every concept shares the one instance instead of a copy.
      * @return a copy of this attribute with the same index
      */
     //@ also ensures \result instanceof Attribute;
     @Override
     public /*@ pure non_null @*/ Object copy() {
         DriftingExemplarAttribute copied = new DriftingExemplarAttribute(this.rng);
-        copied.attribute        = (Attribute) this.attribute.copy();        
+        copied.attribute        = this.attribute;
         copied.variance         = this.variance;
         copied.gmm_selector     = this.gmm_selector;
         copied.maxVelocity      = this.maxVelocity;
         copied.rng              = this.rng;
         copied.probabilityOfVelocityShift = this.probabilityOfVelocityShift;
+        copied.lazyDrift        = this.lazyDrift;
+        copied.lastUpdateTime   = this.lastUpdateTime;
+        copied.nextVelocityShiftTime = this.nextVelocityShiftTime;
         copied.expectedValues = new double[this.expectedValues.length]; 
         copied.velocity = new double[copied.expectedValues.length]; 
         for(int i = 0; i < copied.expectedValues.length; i++) {
@@ -133,8 +147,10 @@ public class DriftingExemplarAttribute implements Copyable, Serializable, Revisi
 
     /**
      * Incrementally move/drift this attribute based on velocity
+     *
+     * @return true if the velocity shifted
      */
-    public void step() {
+    public boolean step() {
         if (reflectOffBoundaries) // Reflective edges
         {
             expectedValues[gmm_selector] += velocity[gmm_selector];
@@ -156,10 +172,134 @@ public class DriftingExemplarAttribute implements Copyable, Serializable, Revisi
             for(int i = 0; i < velocity.length; i++) {
                 velocity[i] = rng.nextDouble() * 2 * this.maxVelocity - this.maxVelocity;
             }
+            return true;
         }
+        return false;
+    }
+
+    /**
+     * @param p_log log to report lazy velocity shifts to, or null
+     * @param p_conceptId concept this attribute belongs to
+     */
+    public void setDriftEventLog(DriftEventLog p_log, int p_conceptId) {
+        this.eventLog = p_log;
+        this.conceptId = p_conceptId;
     }
     
   
+    /**
+     * Switch this attribute to lazy drift. Instead of moving one step each time step() is called, every mixture
+     * component moves continuously with a logical clock (e.g. the stream instance count) and is only brought up to date
+     * when read via generateNextValue(long). Velocity shifts are scheduled by drawing geometric skips, so the result
+     * is equivalent to an independent velocity shift trial per clock tick.
+     * <p>
+     * This is not the eager rate: step() moves only the last sampled component, and only when the concept emits,
+     * while here every component moves and a shift is tried on every tick of the shared clock. Reflection is also
+     * exact, where step() clamps to 0.000001 / 0.999999.
+     *
+     * @param p_time current logical time
+     */
+    public void startLazyDrift(long p_time) {
+        this.lazyDrift = true;
+        this.lastUpdateTime = p_time;
+        this.nextVelocityShiftTime = p_time + nextVelocityShiftSkip();
+    }
+
+    /**
+     * @return true if this attribute uses lazy (closed-form) drift
+     */
+    public boolean isLazyDrift() {
+        return lazyDrift;
+    }
+
+    /**
+     * Bring the lazily drifting means up to date. Cost is O(GMM size) per velocity shift that happened since the last
+     * update (plus one), regardless of how long the attribute sat idle.
+     *
+     * @param p_time logical time to advance to
+     */
+    public void advanceTo(long p_time) {
+        while (this.nextVelocityShiftTime <= p_time) {
+            drift(this.nextVelocityShiftTime - this.lastUpdateTime);
+            this.lastUpdateTime = this.nextVelocityShiftTime;
+            for(int i = 0; i < velocity.length; i++) {
+                velocity[i] = rng.nextDouble() * 2 * this.maxVelocity - this.maxVelocity;
+            }
+            if (this.eventLog != null) {
+                this.eventLog.record(this.nextVelocityShiftTime, this.conceptId, DriftEventLog.VELOCITY_SHIFT, this.attribute.index());
+            }
+            this.nextVelocityShiftTime += nextVelocityShiftSkip();
+        }
+        if (p_time > this.lastUpdateTime) {
+            drift(p_time - this.lastUpdateTime);
+            this.lastUpdateTime = p_time;
+        }
+    }
+
+    /**
+     * Closed-form equivalent of applying the step() motion to every mixture component p_ticks times with constant
+     * velocity. Reflective edges unfold to a triangle wave of period 2, and the velocity sign follows its slope.
+     *
+     * @param p_ticks number of logical clock ticks to move
+     */
+    protected void drift(long p_ticks) {
+        driftMeans(expectedValues, velocity, 0, expectedValues.length, p_ticks, reflectOffBoundaries);
+    }
+
+    /**
+     * @return number of clock ticks until the next velocity shift (geometric distribution, support 1, 2, ...)
+     */
+    protected long nextVelocityShiftSkip() {
+        return velocityShiftSkip(rng, probabilityOfVelocityShift);
+    }
+
+    /**
+     * Write the drifting state (component means, velocities, and lazy drift clock) of this attribute
+     *
+     * @param p_out destination
+     * @throws IOException on write failure
+     */
+    public void writeState(DataOutput p_out) throws IOException {
+        for (int i = 0; i < expectedValues.length; i++) {
+            p_out.writeDouble(expectedValues[i]);
+            p_out.writeDouble(velocity[i]);
+        }
+        if (lazyDrift) {
+            p_out.writeLong(lastUpdateTime);
+            p_out.writeLong(nextVelocityShiftTime);
+        }
+    }
+
+    /**
+     * Read state written by writeState() into an attribute with the same GMM size and drift mode
+     *
+     * @param p_in source
+     * @throws IOException on read failure
+     */
+    public void readState(DataInput p_in) throws IOException {
+        for (int i = 0; i < expectedValues.length; i++) {
+            expectedValues[i] = p_in.readDouble();
+            velocity[i] = p_in.readDouble();
+        }
+        if (lazyDrift) {
+            lastUpdateTime = p_in.readLong();
+            nextVelocityShiftTime = p_in.readLong();
+        }
+    }
+
+    /**
+     * Sample next attribute value at a logical time, first bringing lazily drifting means up to date
+     *
+     * @param p_time logical time of the sample
+     * @return value of attribute for next instance
+     */
+    public double generateNextValue(long p_time) {
+        if (this.lazyDrift) {
+            advanceTo(p_time);
+        }
+        return generateNextValue();
+    }
+
     /**
      * Sample next attribute value
      *
@@ -167,7 +307,31 @@ public class DriftingExemplarAttribute implements Copyable, Serializable, Revisi
      */
     public double generateNextValue() {
         gmm_selector = this.rng.nextInt(expectedValues.length);
-        double ret = expectedValues[gmm_selector] + this.rng.nextGaussian() * variance;
+        return toAttributeValue(expectedValues[gmm_selector] + this.rng.nextGaussian() * variance);
+    }
+
+    /**
+     * Sample next attribute value with noise supplied by the caller (e.g. correlated with the other attributes)
+     * instead of drawn here. Only the GMM component is drawn.
+     *
+     * @param p_time logical time of the sample
+     * @param p_noise standard normal noise of this attribute
+     * @return value of attribute for next instance
+     */
+    public double generateNextValue(long p_time, double p_noise) {
+        if (this.lazyDrift) {
+            advanceTo(p_time);
+        }
+        gmm_selector = this.rng.nextInt(expectedValues.length);
+        return toAttributeValue(expectedValues[gmm_selector] + p_noise * variance);
+    }
+
+    /**
+     * @param p_value sampled locus
+     * @return the locus clipped to [0, 1), and mapped to a value index if the attribute is nominal
+     */
+    protected double toAttributeValue(double p_value) {
+        double ret = p_value;
         if (ret < 0) { ret = 0; }
         if (ret >= 1) { ret = 0.99999; }
         if (this.attribute.isNominal() || this.attribute.isString()) {
@@ -184,6 +348,14 @@ public class DriftingExemplarAttribute implements Copyable, Serializable, Revisi
         attribute = p_attrib;
     }
 
+    /**
+     * Re-bind this attribute to a different random number generator
+     * @param p_rng random number generator to use from now on
+     */
+    public void setRandom(Random p_rng) {
+        this.rng = p_rng;
+    }
+
     public void setProbabilityOfVelocityShift( double p_prob) {
         this.probabilityOfVelocityShift = p_prob;
     }
@@ -268,6 +440,58 @@ public class DriftingExemplarAttribute implements Copyable, Serializable, Revisi
         return attribute;
     }
     
+    /**
+     * Closed-form drift of the mixture components [p_from, p_to) of flat mean/velocity arrays by p_ticks clock ticks
+     * at constant velocity. Reflective edges unfold to a triangle wave of period 2, and the velocity sign follows its
+     * slope. Shared by the object and flat (structure of arrays) exemplar layouts.
+     *
+     * @param p_means component means, updated in place
+     * @param p_velocities component velocities, updated in place
+     * @param p_from first component
+     * @param p_to one past the last component
+     * @param p_ticks number of clock ticks to move
+     * @param p_reflect true for reflective edges, false for a torus
+     */
+    public static void driftMeans(double[] p_means, double[] p_velocities, int p_from, int p_to, long p_ticks, boolean p_reflect) {
+        for (int i = p_from; i < p_to; i++) {
+            double unfolded = p_means[i] + p_velocities[i] * p_ticks;
+            if (p_reflect) {
+                double phase = unfolded % 2.0;
+                if (phase < 0) {
+                    phase += 2.0;
+                }
+                if (phase <= 1.0) {
+                    p_means[i] = phase;
+                } else {
+                    p_means[i] = 2.0 - phase;
+                    p_velocities[i] = -p_velocities[i];
+                }
+            } else { // Torus edge
+                double wrapped = unfolded % 1.0;
+                p_means[i] = (wrapped < 0) ? wrapped + 1.0 : wrapped;
+            }
+        }
+    }
+
+    /**
+     * Draw the number of clock ticks until the next velocity shift (geometric distribution, support 1, 2, ...)
+     *
+     * @param p_rng random number generator
+     * @param p_probability probability of a velocity shift per tick
+     * @return ticks until the next shift (effectively never if p_probability is 0)
+     */
+    public static long velocityShiftSkip(Random p_rng, double p_probability) {
+        if (p_probability <= 0) {
+            return Long.MAX_VALUE / 2;
+        }
+        if (p_probability >= 1) {
+            return 1;
+        }
+        double u = 1.0 - p_rng.nextDouble(); // (0,1]
+        double skip = Math.floor(Math.log(u) / Math.log(1.0 - p_probability)) + 1;
+        return (skip >= Long.MAX_VALUE / 2) ? Long.MAX_VALUE / 2 : (long) skip;
+    }
+
     @Override
     public String getRevision() {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
@@ -18,11 +18,15 @@
  */
 package moa.streams.generators;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.TreeSet;
 import weka.core.DenseInstance;
 import weka.core.RevisionUtils;
+import weka.core.SparseInstance;
 
 /**
  * DriftingExemplarInstance.java
@@ -53,9 +57,16 @@ public class DriftingExemplarInstance extends DenseInstance implements Comparabl
     protected int GMMSize = 1;
     protected ArrayList<DriftingExemplarAttribute> featureSet;
     protected double[] featureWeights;
-    protected TreeSet<Integer> featuresEnabled;
-    protected TreeSet<Integer> featuresDisabled;
+    protected RankSelectBitSet featuresEnabled;  // clear bits are the disabled features
     protected Random rng;
+    protected boolean lazyDrift = false;
+    protected long time = 0; // logical time (stream instance index) of the next sample
+    protected boolean sparse = false;
+    protected int[] sampledFeatures = null; // sparse mode: features sampled by the last step, ascending
+    protected int numSampled = 0;
+    protected CorrelatedAttributeNoise correlatedNoise = null; // null: independent attribute noise
+    protected transient DriftMagnitudeTracker driftMagnitude = null;
+    protected transient DriftEventLog eventLog = null;
     /**
      * Constructor of an instance that sets weight to one, all values to be missing, and the reference to the dataset to
      * null. (ie. the instance doesn't have access to information about the attribute types)
@@ -92,8 +103,7 @@ public class DriftingExemplarInstance extends DenseInstance implements Comparabl
         //this.featureWeights[featureWeights.length - 1] = 1.0;
         this.maxActive = Math.min(p_maxActive, this.featureWeights.length);
         this.probAttributeActivation = p_probAttributeActivation;
-        this.featuresEnabled = new TreeSet<Integer>();
-        this.featuresDisabled = new TreeSet<Integer>();
+        this.featuresEnabled = new RankSelectBitSet(Math.max(0, p_featureSet.size() - 1));
         this.featureSet = new ArrayList<DriftingExemplarAttribute>(p_featureSet.size());
         this.rng = p_rng;
         for (int i = 0; i < p_featureSet.size() - 1; ++i) {
@@ -108,52 +118,452 @@ public class DriftingExemplarInstance extends DenseInstance implements Comparabl
             // Add it to the containers needed
             featureSet.add(a);
             m_AttValues[i] = a.generateNextValue();
-            this.featuresEnabled.add(i);
+            this.featuresEnabled.set(i);
         }
         if (p_featureSet.size() > 0) {
             m_AttValues[p_featureSet.size() - 1] = p_labelValue;
-            while(this.featuresEnabled.size() > Math.max(1,this.maxActive))
+            while(this.featuresEnabled.cardinality() > Math.max(1,this.maxActive))
             {
-                Integer[] activeArray = this.featuresEnabled.toArray(new Integer[1]);
-                int idx = rng.nextInt(activeArray.length);
-                this.featuresDisabled.add((int)activeArray[idx].longValue());
-                this.featuresEnabled.remove((int)activeArray[idx].longValue());
-                this.featureWeights[(int)activeArray[idx].longValue()] = 0.0;
+                int f = this.featuresEnabled.select1(rng.nextInt(this.featuresEnabled.cardinality()));
+                this.featuresEnabled.clear(f);
+                this.featureWeights[f] = 0.0;
             }
         }
     }
 
     /**
+     * Note that DenseInstance(Instance) shares the value array of its source rather than copying it, so the sample is
+     * explicitly copied here once the exemplar has stepped. Otherwise every emitted instance would keep drifting along
+     * with its exemplar. In sparse mode (see setSparse()) this densifies the sparse sample; callers that want the
+     * sparse form should use nextSparseInstance() instead.
      *
      * @return new denseInstance from sample generator
      */
     public DenseInstance nextInstance() {
-        DenseInstance ret = new DenseInstance(this);
+        if (this.sparse) {
+            return new DenseInstance(nextSparseInstance());
+        }
         step();
+        return new DenseInstance(this.weight(), this.toDoubleArray());
+    }
+
+    /**
+     * Allocation-free counterpart to nextInstance() that writes the sample into a column-major buffer
+     *
+     * @param p_columns destination values, [attribute][row], for every attribute except the (last) class attribute
+     * @param p_row row to write
+     * @return class label of the sample
+     */
+    public int nextValues(double[][] p_columns, int p_row) {
+        step();
+        int classIdx = m_AttValues.length - 1;
+        if (this.sparse) {
+            for (int i = 0; i < classIdx; ++i) {
+                p_columns[i][p_row] = 0;
+            }
+            for (int k = 0; k < numSampled; ++k) {
+                p_columns[sampledFeatures[k]][p_row] = m_AttValues[sampledFeatures[k]];
+            }
+            return (int) m_AttValues[classIdx];
+        }
+        for (int i = 0; i < classIdx; ++i) {
+            p_columns[i][p_row] = m_AttValues[i];
+        }
+        return (int) m_AttValues[classIdx];
+    }
+
+    /**
+     * Allocation-free counterpart to nextInstance() that writes the sample into a caller-owned row
+     *
+     * @param p_values destination, one value per attribute (including the class)
+     */
+    public void nextValues(double[] p_values) {
+        step();
+        if (this.sparse) {
+            int classIdx = m_AttValues.length - 1;
+            Arrays.fill(p_values, 0, classIdx, 0);
+            for (int k = 0; k < numSampled; ++k) {
+                p_values[sampledFeatures[k]] = m_AttValues[sampledFeatures[k]];
+            }
+            p_values[classIdx] = m_AttValues[classIdx];
+            return;
+        }
+        System.arraycopy(m_AttValues, 0, p_values, 0, m_AttValues.length);
+    }
+
+    /**
+     * Sparse counterpart to nextInstance(): only the enabled features (and the class) are sampled and emitted. Disabled
+     * features would be emitted as zero by the dense form, which is exactly what a sparse instance implies for them.
+     *
+     * @return new sparse instance holding the enabled features and the class
+     */
+    public SparseInstance nextSparseInstance() {
+        step();
+        int classIdx = m_AttValues.length - 1;
+        double[] values = new double[numSampled + 1];
+        int[] indices = new int[numSampled + 1];
+        for (int k = 0; k < numSampled; ++k) {
+            indices[k] = sampledFeatures[k];
+            values[k] = m_AttValues[sampledFeatures[k]];
+        }
+        indices[numSampled] = classIdx;
+        values[numSampled] = m_AttValues[classIdx];
+        return new SparseInstance(this.weight(), values, indices, m_AttValues.length);
+    }
+
+    /**
+     * Switch this exemplar to sparse sampling: from then on a step only samples the enabled features, so its cost
+     * scales with the active set instead of the full dimensionality. Disabled features are not touched at all, so
+     * this is meant to be used with lazy drift, which catches them up in closed form when they are enabled again.
+     */
+    public void setSparse() {
+        this.sparse = true;
+        this.sampledFeatures = new int[this.featureWeights.length];
+    }
+
+    /**
+     * Re-bind this exemplar and all of its attributes to a different random number generator, e.g. to give the
+     * exemplar its own independent substream
+     *
+     * @param p_rng random number generator to use from now on
+     */
+    public void setRandom(Random p_rng) {
+        this.rng = p_rng;
+        for (DriftingExemplarAttribute a : featureSet) {
+            a.setRandom(p_rng);
+        }
+    }
+
+    /**
+     * Draw the attribute noise of this exemplar from a multivariate normal instead of independently per attribute.
+     * Must be set right after construction (before any sample), so checkpoints always see the same layout.
+     *
+     * @param p_noise correlated noise over the features of this exemplar, or null for independent noise
+     */
+    public void setCorrelatedNoise(CorrelatedAttributeNoise p_noise) {
+        this.correlatedNoise = p_noise;
+    }
+
+    /**
+     * @return correlated attribute noise of this exemplar, or null if the noise is independent
+     */
+    public CorrelatedAttributeNoise getCorrelatedNoise() {
+        return correlatedNoise;
+    }
+
+    /**
+     * Start measuring the ground truth drift magnitude of this exemplar, with a window starting now
+     */
+    public void trackDriftMagnitude() {
+        int[] gmmStart = new int[featureSet.size() + 1];
+        for (int i = 0; i < featureSet.size(); ++i) {
+            gmmStart[i + 1] = gmmStart[i] + featureSet.get(i).getGMMSize();
+        }
+        this.driftMagnitude = new DriftMagnitudeTracker(gmmStart, featureSet.isEmpty() ? 0 : featureSet.get(0).getVariance());
+        startDriftWindow();
+    }
+
+    /**
+     * Start a new drift magnitude window at the current state
+     */
+    public void startDriftWindow() {
+        this.driftMagnitude.startWindow();
+        for (int i = 0; i < featureSet.size(); ++i) {
+            DriftingExemplarAttribute a = featureSet.get(i);
+            this.driftMagnitude.setWindowState(i, a.expectedValues, a.velocity, 0);
+        }
+    }
+
+    /**
+     * @return ground truth drift magnitude of this exemplar, or null if it is not tracked
+     */
+    public DriftMagnitudeTracker getDriftMagnitude() {
+        return driftMagnitude;
+    }
+
+    /**
+     * Switch every attribute of this exemplar to lazy (closed-form) drift. From then on the attribute means move with
+     * the logical clock given by setTime(), whether or not this concept is active.
+     *
+     * @param p_time current logical time
+     */
+    public void startLazyDrift(long p_time) {
+        this.lazyDrift = true;
+        this.time = p_time;
+        for (DriftingExemplarAttribute a : featureSet) {
+            a.startLazyDrift(p_time);
+        }
+    }
+
+    /**
+     * Report feature and velocity drift of this exemplar. Events carry the index of the first instance they affect.
+     *
+     * @param p_log drift event log, or null to stop reporting
+     */
+    public void setDriftEventLog(DriftEventLog p_log) {
+        this.eventLog = p_log;
+        for (DriftingExemplarAttribute a : featureSet) {
+            a.setDriftEventLog(p_log, getConceptId());
+        }
+    }
+
+    /**
+     * @return concept (class) this exemplar represents
+     */
+    public int getConceptId() {
+        return (int) m_AttValues[m_AttValues.length - 1];
+    }
+
+    /**
+     * @param p_time logical time (stream instance index) of the next sample produced by this exemplar
+     */
+    public void setTime(long p_time) {
+        this.time = p_time;
+    }
+
+    /**
+     * Write the dynamic state of this exemplar: logical time, enabled features, and the drifting attribute state.
+     * Static state (GMM sizes, variances, velocity bounds) is not written, as it is rebuilt from the generator options
+     * and seed. The RNG is the generator's business.
+     *
+     * @param p_out destination
+     * @throws IOException on write failure
+     */
+    public void writeState(DataOutput p_out) throws IOException {
+        p_out.writeLong(this.time);
+        p_out.writeInt(this.featuresEnabled.cardinality());
+        for (int f = featuresEnabled.nextSetBit(0); f >= 0; f = featuresEnabled.nextSetBit(f + 1)) {
+            p_out.writeInt(f);
+        }
+        writeAttributeState(p_out);
+        if (this.correlatedNoise != null) {
+            this.correlatedNoise.writeState(p_out);
+        }
+    }
+
+    /**
+     * Read state written by writeState() into an exemplar built with the same generator options and seed
+     *
+     * @param p_in source
+     * @throws IOException on read failure
+     */
+    public void readState(DataInput p_in) throws IOException {
+        this.time = p_in.readLong();
+        int numFeatures = this.featureWeights.length - 1;
+        this.featuresEnabled.clearAll();
+        for (int i = 0; i < numFeatures; ++i) {
+            this.featureWeights[i] = 0.0;
+        }
+        int numEnabled = p_in.readInt();
+        for (int i = 0; i < numEnabled; ++i) {
+            int f = p_in.readInt();
+            this.featuresEnabled.set(f);
+            this.featureWeights[f] = 1.0;
+        }
+        readAttributeState(p_in);
+        if (this.correlatedNoise != null) {
+            this.correlatedNoise.readState(p_in);
+        }
+    }
+
+    /**
+     * @param p_out destination for the drifting state of every attribute
+     * @throws IOException on write failure
+     */
+    protected void writeAttributeState(DataOutput p_out) throws IOException {
+        for (DriftingExemplarAttribute a : featureSet) {
+            a.writeState(p_out);
+        }
+    }
+
+    /**
+     * @param p_in source of the drifting state of every attribute
+     * @throws IOException on read failure
+     */
+    protected void readAttributeState(DataInput p_in) throws IOException {
+        for (DriftingExemplarAttribute a : featureSet) {
+            a.readState(p_in);
+        }
+    }
+
+    /**
+     * Rough estimate of the heap used by the per-concept state of this exemplar, assuming a 64-bit JVM with compressed
+     * references (12 byte object headers, 16 byte array headers, 8 byte alignment). Shared schema metadata (the WEKA
+     * attributes and header) is not included.
+     *
+     * @return estimated size in bytes
+     */
+    public long estimateFootprint() {
+        long ret = estimateCommonFootprint();
+        ret += objectBytes(24) + arrayBytes(featureSet.size(), 4); // featureSet list
+        for (DriftingExemplarAttribute a : featureSet) {
+            ret += objectBytes(72) + 2 * arrayBytes(a.getGMMSize(), 8);
+        }
         return ret;
     }
 
+    /**
+     * @return estimated size in bytes of the state both layouts have: the value and weight arrays and the feature sets
+     */
+    protected long estimateCommonFootprint() {
+        long ret = objectBytes(112);
+        ret += arrayBytes(m_AttValues.length, 8) + arrayBytes(featureWeights.length, 8);
+        ret += (sampledFeatures != null) ? arrayBytes(sampledFeatures.length, 4) : 0;
+        // One bit per feature, plus a popcount per 512 features
+        ret += objectBytes(32) + arrayBytes(featuresEnabled.words.length, 8)
+                + arrayBytes(featuresEnabled.blockCounts.length, 4);
+        ret += (correlatedNoise != null) ? correlatedNoise.estimateFootprint() : 0;
+        ret += (driftMagnitude != null) ? driftMagnitude.estimateFootprint() : 0;
+        return ret;
+    }
+
+    /**
+     * @param p_fieldBytes bytes used by the fields of an object
+     * @return heap size of the object (header and alignment included)
+     */
+    protected static long objectBytes(long p_fieldBytes) {
+        return (12 + p_fieldBytes + 7) & ~7L;
+    }
+
+    /**
+     * @param p_length number of elements
+     * @param p_elementBytes bytes per element
+     * @return heap size of the array (header and alignment included)
+     */
+    protected static long arrayBytes(long p_length, int p_elementBytes) {
+        return (16 + p_length * p_elementBytes + 7) & ~7L;
+    }
+
     /**
      * Drift the data and update the value array
      */
     public void step() {
-        for (DriftingExemplarAttribute a :  featureSet) {
-            int idx = a.attribute.index();
-            m_AttValues[idx] = a.generateNextValue() * this.featureWeights[idx];
-            a.step();
+        stepAttributes();
+        toggleFeatures();
+    }
+
+    /**
+     * Sample every attribute into the value array and drift it
+     */
+    protected void stepAttributes() {
+        if (this.correlatedNoise != null) {
+            stepCorrelatedAttributes();
+        } else if (this.sparse) {
+            sampleEnabledFeatures();
+        } else if (this.lazyDrift) {
+            for (DriftingExemplarAttribute a :  featureSet) {
+                int idx = a.attribute.index();
+                m_AttValues[idx] = a.generateNextValue(this.time) * this.featureWeights[idx];
+                if (this.driftMagnitude != null) {
+                    this.driftMagnitude.featureChanged(idx, a.expectedValues, a.velocity, 0);
+                }
+            }
+        } else {
+            for (DriftingExemplarAttribute a :  featureSet) {
+                int idx = a.attribute.index();
+                m_AttValues[idx] = a.generateNextValue() * this.featureWeights[idx];
+                stepAttribute(a, idx);
+            }
+        }
+    }
+
+    /**
+     * Eager drift of one sampled attribute, reporting it to the event log and drift magnitude tracker
+     *
+     * @param p_attribute attribute that was just sampled
+     * @param p_idx its index
+     */
+    protected void stepAttribute(DriftingExemplarAttribute p_attribute, int p_idx) {
+        boolean shifted = p_attribute.step();
+        if (shifted && this.eventLog != null) {
+            this.eventLog.record(this.time + 1, getConceptId(), DriftEventLog.VELOCITY_SHIFT, p_idx);
+        }
+        if (this.driftMagnitude != null) {
+            if (shifted) {
+                this.driftMagnitude.featureChanged(p_idx, p_attribute.expectedValues, p_attribute.velocity, 0);
+            } else {
+                this.driftMagnitude.componentMoved(p_idx, p_attribute.gmm_selector, p_attribute.expectedValues[p_attribute.gmm_selector]);
+            }
+        }
+    }
+
+    /**
+     * stepAttributes() with correlated noise: the noise vector is drawn first (d standard normals, then one triangular
+     * matrix-vector product), then the GMM component and drift of each attribute exactly as usual. In sparse mode
+     * only the rows of the enabled features are multiplied out.
+     */
+    protected void stepCorrelatedAttributes() {
+        this.correlatedNoise.drawStandardNormals(this.rng);
+        if (this.sparse) {
+            this.numSampled = 0;
+            for (int idx = featuresEnabled.nextSetBit(0); idx >= 0; idx = featuresEnabled.nextSetBit(idx + 1)) {
+                DriftingExemplarAttribute a = featureSet.get(idx);
+                m_AttValues[idx] = a.generateNextValue(this.time, this.correlatedNoise.correlate(idx));
+                this.sampledFeatures[numSampled++] = idx;
+                if (this.driftMagnitude != null) {
+                    this.driftMagnitude.featureChanged(idx, a.expectedValues, a.velocity, 0);
+                }
+            }
+        } else {
+            double[] noise = this.correlatedNoise.correlateAll();
+            for (DriftingExemplarAttribute a : featureSet) {
+                int idx = a.attribute.index();
+                m_AttValues[idx] = a.generateNextValue(this.time, noise[idx]) * this.featureWeights[idx];
+                if (!this.lazyDrift) {
+                    stepAttribute(a, idx);
+                } else if (this.driftMagnitude != null) {
+                    this.driftMagnitude.featureChanged(idx, a.expectedValues, a.velocity, 0);
+                }
+            }
+        }
+        stepCovariance();
+    }
+
+    /**
+     * Covariance drift: possibly redraw the loadings of one feature (after the sample, like every other drift)
+     */
+    protected void stepCovariance() {
+        int shifted = this.correlatedNoise.step(this.rng);
+        if (shifted >= 0 && this.eventLog != null) {
+            this.eventLog.record(this.time + 1, getConceptId(), DriftEventLog.COVARIANCE_SHIFT, shifted);
+        }
+    }
+
+    /**
+     * Sparse mode step: sample only the enabled features (weight 1) and remember which ones were sampled
+     */
+    protected void sampleEnabledFeatures() {
+        this.numSampled = 0;
+        for (int idx = featuresEnabled.nextSetBit(0); idx >= 0; idx = featuresEnabled.nextSetBit(idx + 1)) {
+            DriftingExemplarAttribute a = featureSet.get(idx);
+            m_AttValues[idx] = a.generateNextValue(this.time);
+            this.sampledFeatures[numSampled++] = idx;
+            if (this.driftMagnitude != null) {
+                this.driftMagnitude.featureChanged(idx, a.expectedValues, a.velocity, 0);
+            }
         }
+    }
+
+    /**
+     * Feature drift: possibly exchange an enabled feature for a disabled one
+     */
+    protected void toggleFeatures() {
         if (((this.maxActive + 1) < this.featureWeights.length) && (rng.nextDouble() < this.probAttributeActivation))
         {
-            Integer[] activeArray = this.featuresEnabled.toArray(new Integer[1]);
-            Integer[] inactiveArray = this.featuresDisabled.toArray(new Integer[1]);
-            int idxToActivate = rng.nextInt(inactiveArray.length);
-            int idxToDeactivate = rng.nextInt(activeArray.length);
-            featuresEnabled.add(inactiveArray[idxToActivate]);
-            featuresEnabled.remove(activeArray[idxToDeactivate]);
-            featuresDisabled.add(activeArray[idxToDeactivate]);
-            featuresDisabled.remove(inactiveArray[idxToActivate]);
-            this.featureWeights[inactiveArray[idxToActivate]] = 1.0;
-            this.featureWeights[activeArray[idxToDeactivate]] = 0.0;
+            // Pick by rank in ascending feature order, so the same draws select the same features as ever
+            int numActive = featuresEnabled.cardinality();
+            int idxToActivate = rng.nextInt(featuresEnabled.size() - numActive);
+            int idxToDeactivate = rng.nextInt(numActive);
+            int activated = featuresEnabled.select0(idxToActivate);
+            int deactivated = featuresEnabled.select1(idxToDeactivate);
+            featuresEnabled.set(activated);
+            featuresEnabled.clear(deactivated);
+            this.featureWeights[activated] = 1.0;
+            this.featureWeights[deactivated] = 0.0;
+            if (this.eventLog != null) {
+                this.eventLog.record(this.time + 1, getConceptId(), DriftEventLog.FEATURE_ENABLED, activated);
+                this.eventLog.record(this.time + 1, getConceptId(), DriftEventLog.FEATURE_DISABLED, deactivated);
+            }
         }
     }
 
@@ -0,0 +1,432 @@
+/*
+ *    FlatDriftingExemplarInstance.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.generators;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import weka.core.Attribute;
+
+/**
+ * FlatDriftingExemplarInstance.java
+ *
+ * Structure-of-arrays layout of a DriftingExemplarInstance. Instead of one DriftingExemplarAttribute object (with its
+ * own arrays) per feature, the GMM means and velocities of all features are packed into two flat arrays indexed through
+ * gmmStart[], and the per-feature velocity bounds are a primitive array as well. Schema metadata (the number of values
+ * of each nominal feature) can be shared by all concepts, so the memory of a concept is just its drift state.
+ *
+ * step() is split into passes: one sequential pass that draws every random number in exactly the same order as the
+ * object layout does (so both layouts produce the same stream for the same seed), followed by branch-light passes over
+ * contiguous primitive arrays for sampling and drift, which the JIT can unroll and, where possible, vectorize.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class FlatDriftingExemplarInstance extends DriftingExemplarInstance {
+
+    private static final long serialVersionUID = 1L;
+    protected int numFeatures;                    // number of non-class features
+    protected int[] gmmStart;                     // [numFeatures + 1] offset of each feature's components
+    protected double[] means;                     // GMM component means of all features
+    protected double[] velocities;                // GMM component velocities of all features
+    protected double[] maxVelocities;             // [numFeatures]
+    protected int[] nominalSizes;                 // [numFeatures] number of nominal values, 0 if numeric (may be shared)
+    protected boolean reflectOffBoundaries = true;
+
+    // Lazy drift state (only allocated in lazy mode)
+    protected long[] lastUpdateTimes;
+    protected long[] nextVelocityShiftTimes;
+
+    // Per-step scratch space
+    protected int[] selected;                     // [numFeatures] absolute index of the sampled component
+    protected double[] gaussians;                 // [numFeatures]
+    protected boolean[] velocityShifted;          // [numFeatures]
+    protected double[] shiftedVelocities;         // same layout as velocities
+
+    /**
+     * Construct an exemplar exactly like DriftingExemplarInstance (same parameters, same random draws), then pack its
+     * attribute state into flat arrays and release the per-attribute objects.
+     *
+     * @param p_featureSet Common set of features/Attributes
+     * @param p_labelValue Label/class of the instance
+     * @param p_maxActive sets the maximum number of active attributes for this Exemplar
+     * @param p_probAttributeActivation robability that active attributes are toggled
+     * @param p_maxVelocity Max average drift in attribute loci
+     * @param p_probVelShift The probability that an attributes velocity will shift
+     * @param p_variance Noise factor added to attribute values.
+     * @param p_GMMSize The max number of centriods per attribute per label/class
+     * @param p_rng Random number generator
+     */
+    public FlatDriftingExemplarInstance(
+            ArrayList<DriftingExemplarAttribute> p_featureSet,
+            int p_labelValue,
+            int p_maxActive,
+            double p_probAttributeActivation,
+            double p_maxVelocity,
+            double p_probVelShift,
+            double p_variance,
+            int p_GMMSize,
+            Random p_rng) {
+        this(p_featureSet, p_labelValue, p_maxActive, p_probAttributeActivation, p_maxVelocity, p_probVelShift,
+              p_variance, p_GMMSize, p_rng, null);
+    }
+
+    /**
+     * Same as above, but sharing the nominal value counts with the other concepts of the stream
+     *
+     * @param p_featureSet Common set of features/Attributes
+     * @param p_labelValue Label/class of the instance
+     * @param p_maxActive sets the maximum number of active attributes for this Exemplar
+     * @param p_probAttributeActivation robability that active attributes are toggled
+     * @param p_maxVelocity Max average drift in attribute loci
+     * @param p_probVelShift The probability that an attributes velocity will shift
+     * @param p_variance Noise factor added to attribute values.
+     * @param p_GMMSize The max number of centriods per attribute per label/class
+     * @param p_rng Random number generator
+     * @param p_nominalSizes shared result of nominalSizes(p_featureSet), or null to compute a private copy
+     */
+    public FlatDriftingExemplarInstance(
+            ArrayList<DriftingExemplarAttribute> p_featureSet,
+            int p_labelValue,
+            int p_maxActive,
+            double p_probAttributeActivation,
+            double p_maxVelocity,
+            double p_probVelShift,
+            double p_variance,
+            int p_GMMSize,
+            Random p_rng,
+            int[] p_nominalSizes) {
+        super(p_featureSet, p_labelValue, p_maxActive, p_probAttributeActivation, p_maxVelocity, p_probVelShift,
+              p_variance, p_GMMSize, p_rng);
+        this.nominalSizes = (p_nominalSizes != null) ? p_nominalSizes : nominalSizes(this.featureSet);
+        flatten();
+    }
+
+    /**
+     * @param p_featureSet features (excluding the class), in value-index order
+     * @return number of values of each nominal feature, 0 for numeric ones
+     */
+    public static int[] nominalSizes(List<DriftingExemplarAttribute> p_featureSet) {
+        int[] ret = new int[p_featureSet.size()];
+        for (int i = 0; i < ret.length; ++i) {
+            Attribute a = p_featureSet.get(i).getAttribute();
+            ret[i] = (a.isNominal() || a.isString()) ? a.numValues() : 0;
+        }
+        return ret;
+    }
+
+    /**
+     * Pack the per-attribute objects into the flat arrays. Features are stored in value-index order.
+     */
+    protected final void flatten() {
+        this.numFeatures = featureSet.size();
+        this.gmmStart = new int[numFeatures + 1];
+        for (int i = 0; i < numFeatures; ++i) {
+            DriftingExemplarAttribute a = featureSet.get(i);
+            assert a.attribute.index() == i : "Exemplar features must be in value-index order";
+            this.gmmStart[i + 1] = this.gmmStart[i] + a.getGMMSize();
+        }
+        int numComponents = this.gmmStart[numFeatures];
+        this.means = new double[numComponents];
+        this.velocities = new double[numComponents];
+        this.shiftedVelocities = new double[numComponents];
+        this.maxVelocities = new double[numFeatures];
+        this.selected = new int[numFeatures];
+        this.gaussians = new double[numFeatures];
+        this.velocityShifted = new boolean[numFeatures];
+        for (int i = 0; i < numFeatures; ++i) {
+            DriftingExemplarAttribute a = featureSet.get(i);
+            System.arraycopy(a.expectedValues, 0, this.means, gmmStart[i], a.expectedValues.length);
+            System.arraycopy(a.velocity, 0, this.velocities, gmmStart[i], a.velocity.length);
+            this.maxVelocities[i] = a.maxVelocity;
+            // Noise and velocity shift probability are the same for every feature of a concept
+            this.variance = a.variance;
+            this.probVelShift = a.probabilityOfVelocityShift;
+            this.selected[i] = gmmStart[i] + a.gmm_selector;
+            this.reflectOffBoundaries = a.reflectOffBoundaries;
+        }
+        this.featureSet = new ArrayList<>(0);
+    }
+
+    /**
+     * The nominal value counts are usually shared with the other concepts, so they are not counted here
+     */
+    @Override
+    public long estimateFootprint() {
+        long ret = estimateCommonFootprint() + objectBytes(24) + arrayBytes(0, 4);
+        int numComponents = gmmStart[numFeatures];
+        ret += arrayBytes(numFeatures + 1, 4) + 3 * arrayBytes(numComponents, 8);           // layout, means, velocities
+        ret += arrayBytes(numFeatures, 8);                                                   // velocity bounds
+        ret += arrayBytes(numFeatures, 4) + arrayBytes(numFeatures, 8) + arrayBytes(numFeatures, 1); // scratch space
+        if (lastUpdateTimes != null) {
+            ret += 2 * arrayBytes(numFeatures, 8);
+        }
+        return ret;
+    }
+
+    @Override
+    public void trackDriftMagnitude() {
+        this.driftMagnitude = new DriftMagnitudeTracker(gmmStart, variance);
+        startDriftWindow();
+    }
+
+    @Override
+    public void startDriftWindow() {
+        this.driftMagnitude.startWindow();
+        for (int i = 0; i < numFeatures; ++i) {
+            this.driftMagnitude.setWindowState(i, means, velocities, gmmStart[i]);
+        }
+    }
+
+    @Override
+    public void setRandom(Random p_rng) {
+        this.rng = p_rng;
+    }
+
+    @Override
+    public void startLazyDrift(long p_time) {
+        this.lazyDrift = true;
+        this.time = p_time;
+        this.lastUpdateTimes = new long[numFeatures];
+        this.nextVelocityShiftTimes = new long[numFeatures];
+        for (int i = 0; i < numFeatures; ++i) {
+            this.lastUpdateTimes[i] = p_time;
+            this.nextVelocityShiftTimes[i] = p_time + DriftingExemplarAttribute.velocityShiftSkip(rng, probVelShift);
+        }
+    }
+
+    /**
+     * Same format as the object layout, so checkpoints are interchangeable between layouts
+     */
+    @Override
+    protected void writeAttributeState(DataOutput p_out) throws IOException {
+        for (int i = 0; i < numFeatures; ++i) {
+            for (int k = gmmStart[i]; k < gmmStart[i + 1]; ++k) {
+                p_out.writeDouble(means[k]);
+                p_out.writeDouble(velocities[k]);
+            }
+            if (lazyDrift) {
+                p_out.writeLong(lastUpdateTimes[i]);
+                p_out.writeLong(nextVelocityShiftTimes[i]);
+            }
+        }
+    }
+
+    @Override
+    protected void readAttributeState(DataInput p_in) throws IOException {
+        for (int i = 0; i < numFeatures; ++i) {
+            for (int k = gmmStart[i]; k < gmmStart[i + 1]; ++k) {
+                means[k] = p_in.readDouble();
+                velocities[k] = p_in.readDouble();
+            }
+            if (lazyDrift) {
+                lastUpdateTimes[i] = p_in.readLong();
+                nextVelocityShiftTimes[i] = p_in.readLong();
+            }
+        }
+    }
+
+    @Override
+    protected void stepAttributes() {
+        if (this.correlatedNoise != null) {
+            stepCorrelatedAttributes();
+            return;
+        }
+        if (this.sparse) {
+            sampleEnabledFeatures();
+            return;
+        }
+        drawComponents(true);
+        sampleAndDrift();
+    }
+
+    /**
+     * Correlated noise counterpart of stepAttributes(). Same random draws as the object layout.
+     */
+    @Override
+    protected void stepCorrelatedAttributes() {
+        this.correlatedNoise.drawStandardNormals(this.rng);
+        if (this.sparse) {
+            this.numSampled = 0;
+            for (int i = featuresEnabled.nextSetBit(0); i >= 0; i = featuresEnabled.nextSetBit(i + 1)) {
+                if (this.lazyDrift) {
+                    advanceTo(i, this.time);
+                }
+                int k = gmmStart[i] + rng.nextInt(gmmStart[i + 1] - gmmStart[i]);
+                m_AttValues[i] = featureValue(i, means[k] + this.correlatedNoise.correlate(i) * variance);
+                this.sampledFeatures[numSampled++] = i;
+            }
+        } else {
+            System.arraycopy(this.correlatedNoise.correlateAll(), 0, gaussians, 0, numFeatures);
+            drawComponents(false);
+            sampleAndDrift();
+        }
+        stepCovariance();
+    }
+
+    /**
+     * Pass 1 of a step: draw all random numbers, in the same order as the object layout
+     *
+     * @param p_drawGaussians false if the noise in gaussians[] was supplied by correlated sampling
+     */
+    protected void drawComponents(boolean p_drawGaussians) {
+        if (this.lazyDrift) {
+            for (int i = 0; i < numFeatures; ++i) {
+                advanceTo(i, this.time);
+                selected[i] = gmmStart[i] + rng.nextInt(gmmStart[i + 1] - gmmStart[i]);
+                if (p_drawGaussians) {
+                    gaussians[i] = rng.nextGaussian();
+                }
+            }
+        } else {
+            for (int i = 0; i < numFeatures; ++i) {
+                selected[i] = gmmStart[i] + rng.nextInt(gmmStart[i + 1] - gmmStart[i]);
+                if (p_drawGaussians) {
+                    gaussians[i] = rng.nextGaussian();
+                }
+                velocityShifted[i] = rng.nextDouble() < probVelShift;
+                if (velocityShifted[i]) {
+                    for (int k = gmmStart[i]; k < gmmStart[i + 1]; ++k) {
+                        shiftedVelocities[k] = rng.nextDouble() * 2 * maxVelocities[i] - maxVelocities[i];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes 2 to 4 of a step: sample from the components selected in pass 1, then drift them
+     */
+    protected void sampleAndDrift() {
+        // 2.) Sample values from the selected components
+        for (int i = 0; i < numFeatures; ++i) {
+            gaussians[i] = means[selected[i]] + gaussians[i] * variance;
+        }
+        for (int i = 0; i < numFeatures; ++i) {
+            double v = gaussians[i];
+            v = (v < 0) ? 0 : v;
+            v = (v >= 1) ? 0.99999 : v;
+            m_AttValues[i] = ((nominalSizes[i] > 0) ? Math.floor(nominalSizes[i] * v) : v) * featureWeights[i];
+        }
+        if (this.lazyDrift) {
+            return;
+        }
+
+        // 3.) Drift the sampled components one step
+        for (int i = 0; i < numFeatures; ++i) {
+            int k = selected[i];
+            if (reflectOffBoundaries) {
+                means[k] += velocities[k];
+                if (means[k] < 0.0) {
+                    means[k] = 0.000001;
+                    velocities[k] *= -1.0;
+                }
+                if (means[k] > 1.0) {
+                    means[k] = 0.999999;
+                    velocities[k] *= -1.0;
+                }
+            } else {
+                means[k] += velocities[k] % 1.0;
+            }
+        }
+
+        // 4.) Apply velocity shifts drawn in pass 1
+        for (int i = 0; i < numFeatures; ++i) {
+            if (velocityShifted[i]) {
+                System.arraycopy(shiftedVelocities, gmmStart[i], velocities, gmmStart[i], gmmStart[i + 1] - gmmStart[i]);
+                if (this.eventLog != null) {
+                    this.eventLog.record(this.time + 1, getConceptId(), DriftEventLog.VELOCITY_SHIFT, i);
+                }
+            }
+        }
+
+        // 5.) Report the drift of pass 3 and 4
+        if (this.driftMagnitude != null) {
+            for (int i = 0; i < numFeatures; ++i) {
+                if (velocityShifted[i]) {
+                    this.driftMagnitude.featureChanged(i, means, velocities, gmmStart[i]);
+                } else {
+                    this.driftMagnitude.componentMoved(selected[i], means[selected[i]]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sparse mode step. Same random draws as the object layout.
+     */
+    @Override
+    protected void sampleEnabledFeatures() {
+        this.numSampled = 0;
+        for (int i = featuresEnabled.nextSetBit(0); i >= 0; i = featuresEnabled.nextSetBit(i + 1)) {
+            if (this.lazyDrift) {
+                advanceTo(i, this.time);
+            }
+            int k = gmmStart[i] + rng.nextInt(gmmStart[i + 1] - gmmStart[i]);
+            m_AttValues[i] = featureValue(i, means[k] + rng.nextGaussian() * variance);
+            this.sampledFeatures[numSampled++] = i;
+        }
+    }
+
+    /**
+     * @param p_feature feature index
+     * @param p_value sampled locus
+     * @return the locus clipped to [0, 1), and mapped to a value index if the feature is nominal
+     */
+    protected double featureValue(int p_feature, double p_value) {
+        double v = (p_value < 0) ? 0 : p_value;
+        v = (v >= 1) ? 0.99999 : v;
+        return (nominalSizes[p_feature] > 0) ? Math.floor(nominalSizes[p_feature] * v) : v;
+    }
+
+    /**
+     * Bring the lazily drifting components of one feature up to date (see DriftingExemplarAttribute.advanceTo)
+     *
+     * @param p_feature feature index
+     * @param p_time logical time to advance to
+     */
+    protected void advanceTo(int p_feature, long p_time) {
+        int from = gmmStart[p_feature];
+        int to = gmmStart[p_feature + 1];
+        while (nextVelocityShiftTimes[p_feature] <= p_time) {
+            DriftingExemplarAttribute.driftMeans(means, velocities, from, to,
+                    nextVelocityShiftTimes[p_feature] - lastUpdateTimes[p_feature], reflectOffBoundaries);
+            lastUpdateTimes[p_feature] = nextVelocityShiftTimes[p_feature];
+            for (int k = from; k < to; ++k) {
+                velocities[k] = rng.nextDouble() * 2 * maxVelocities[p_feature] - maxVelocities[p_feature];
+            }
+            if (this.eventLog != null) {
+                this.eventLog.record(nextVelocityShiftTimes[p_feature], getConceptId(), DriftEventLog.VELOCITY_SHIFT, p_feature);
+            }
+            nextVelocityShiftTimes[p_feature] += DriftingExemplarAttribute.velocityShiftSkip(rng, probVelShift);
+        }
+        if (p_time > lastUpdateTimes[p_feature]) {
+            DriftingExemplarAttribute.driftMeans(means, velocities, from, to, p_time - lastUpdateTimes[p_feature], reflectOffBoundaries);
+            lastUpdateTimes[p_feature] = p_time;
+        }
+        if (this.driftMagnitude != null) {
+            this.driftMagnitude.featureChanged(p_feature, means, velocities, from);
+        }
+    }
+}
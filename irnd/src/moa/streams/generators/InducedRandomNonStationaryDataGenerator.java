@@ -18,24 +18,57 @@
  */
 package moa.streams.generators;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import weka.core.DenseInstance;
 import weka.core.Instance;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
-import java.util.TreeSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import moa.core.InstancesHeader;
+import moa.core.Measurement;
 import moa.core.ObjectRepository;
+import moa.streams.BatchInstanceStream;
+import moa.streams.ColumnarInstanceBatch;
+import moa.streams.InstancePool;
+import moa.streams.InstrumentedInstanceStream;
+import moa.streams.RecyclingInstanceStream;
 import moa.options.AbstractOptionHandler;
+import moa.options.FileOption;
+import moa.options.FlagOption;
 import moa.options.FloatOption;
 import moa.options.IntOption;
-import moa.streams.InstanceStream;
+import moa.options.MultiChoiceOption;
+import moa.options.Option;
+import moa.options.StringOption;
 import moa.tasks.TaskMonitor;
 import weka.core.Attribute;
 import weka.core.Instances;
@@ -49,7 +82,7 @@ import weka.core.Instances;
  * @version $Revision: 1 $
  */
 public class InducedRandomNonStationaryDataGenerator extends AbstractOptionHandler implements
-        InstanceStream {
+        BatchInstanceStream, RecyclingInstanceStream, InstrumentedInstanceStream {
 
     @Override
     public String getPurposeString() {
@@ -83,10 +116,10 @@ public class InducedRandomNonStationaryDataGenerator extends AbstractOptionHandl
             "Probability that active attributes/features are toggled (per concept, 0.0-100.0)", 0.000, 0.000, 100.000);
 
     public FloatOption attributeVelocityOption = new FloatOption("attributeVelocity", 'v',
-            "Average drift in attribute loci (per concept, 0.0-100.0)", 0.05, 0.000, 100.000);
+            "Average drift in attribute loci (per concept, 0.0-100.0). Applied to the sampled centroid each time its concept emits, or to every centroid every instance under lazyDrift", 0.05, 0.000, 100.000);
 
     public FloatOption attributeVelocityShiftProbabilityOption = new FloatOption("attributeVelocityShiftProbability", 'r',
-            "The probability that an attributes velocity will shift  (0.0-100.0)", 0.01, 0, 100.0);
+            "The probability that an attributes velocity will shift  (0.0-100.0). Tried each time its concept emits, or every instance under lazyDrift", 0.01, 0, 100.0);
     
     public IntOption maxNumCentroidsPerClassOption = new IntOption("maxCentroidsPerClass", 'k',
             "The max number of centriods per attribute per label/class (i.e. size of GMM).", 5, 1, 50);
@@ -96,16 +129,128 @@ public class InducedRandomNonStationaryDataGenerator extends AbstractOptionHandl
     
     public FloatOption labelNoiseOption = new FloatOption("labelNoise", 'L',
             "Probability the label of a class is incorrect  (0.0-100.0)", 0.000, 0.000, 100.000);
+
+    public MultiChoiceOption classPriorOption = new MultiChoiceOption("classPrior", 'c',
+            "Prior distribution over the active concepts (by class id)", new String[]{"Uniform", "Zipf", "Geometric", "Weights"},
+            new String[]{"Every active concept is equally likely",
+                "Weight of class i is 1/(i+1)^a",
+                "Weight of class i is a^i",
+                "Weights given per class by classWeights"}, 0);
+
+    public FloatOption classPriorParameterOption = new FloatOption("classPriorParameter", 'a',
+            "Zipf exponent or geometric ratio of the class prior", 1.0, 0.0, Double.MAX_VALUE);
+
+    public StringOption classWeightsOption = new StringOption("classWeights", 'w',
+            "Comma separated weight of each class for the Weights class prior", "");
+
+    public IntOption parallelThreadsOption = new IntOption("parallelThreads", 't',
+            "Worker threads for parallel substream generation, where each concept has its own seeded RNG (0 = classic single RNG generation)", 0, 0, 1024);
+
+    public IntOption parallelBlockSizeOption = new IntOption("parallelBlockSize", 'b',
+            "Number of instances generated per parallel block (does not change the generated stream)", 8192, 1, Integer.MAX_VALUE);
+
+    public FlagOption lazyDriftOption = new FlagOption("lazyDrift", 'z',
+            "Drift every concept (active or not) continuously with the instance count, computing attribute means in closed form only when sampled. "
+            + "Every centroid moves and every velocity shift is tried once per stream instance, so drift is roughly (active concepts x maxCentroidsPerClass) times faster than without it, "
+            + "and loci reflect exactly off 0 and 1 instead of being clamped");
+
+    public FlagOption flatExemplarsOption = new FlagOption("flatExemplars", 'f',
+            "Store each concept's attribute state in flat primitive arrays (structure of arrays) instead of per-attribute objects");
+
+    public MultiChoiceOption randomSourceOption = new MultiChoiceOption("randomSource", 'R',
+            "Random number engine used by the generator and all concepts.", RandomSource.names(), RandomSource.descriptions(),
+            RandomSource.JavaUtilRandom.ordinal());
+
+    public FlagOption sparseInstancesOption = new FlagOption("sparseInstances", 'x',
+            "Emit SparseInstances holding only the enabled features, and only sample those (implies lazyDrift)");
+
+    public FlagOption lazyConceptsOption = new FlagOption("lazyConcepts", 'l',
+            "Create each concept from (seed, class id) on its first activation, and evict deactivated concepts to a compact drift state");
+
+    public FileOption driftEventFileOption = new FileOption("driftEventFile", 'D',
+            "CSV file to write the ground truth drift events (instance, concept, event, attribute) to", "", "csv", true);
+
+    public IntOption startInstanceOption = new IntOption("startInstance", 'i',
+            "Fast-forward the stream to this instance index on (re)start, without materializing the skipped instances", 0, 0, Integer.MAX_VALUE);
+
+    public FileOption checkpointFileOption = new FileOption("checkpointFile", 'S',
+            "Generator checkpoint. If it exists, (re)start resumes from it when it is not past startInstance.", "", "irnd", true);
+
+    public IntOption checkpointIntervalOption = new IntOption("checkpointInterval", 'I',
+            "Write a checkpoint to checkpointFile every this many instances (0 = never)", 0, 0, Integer.MAX_VALUE);
+
+    public IntOption instancePoolSizeOption = new IntOption("instancePoolSize", 'u',
+            "Overwrite up to this many dense instances the consumer offers back instead of allocating new ones (0 = off). Only for consumers (and learners) that keep no reference to recycled instances.", 0, 0, Integer.MAX_VALUE);
+
+    public FloatOption featureCorrelationOption = new FloatOption("featureCorrelation", 'y',
+            "Largest correlation between the noise of two attributes of a concept (0.0-99.0, 0 = independent noise). Each concept caches a dense Cholesky factor, so memory grows with the square of the number of attributes.", 0.0, 0.0, 99.0);
+
+    public IntOption correlationFactorsOption = new IntOption("correlationFactors", 'q',
+            "Number of latent factors (rank) of the attribute noise correlation of each concept", 3, 1, 1000);
+
+    public IntOption driftMagnitudeWindowOption = new IntOption("driftMagnitudeWindow", 'W',
+            "Report the ground truth drift (KL divergence and velocity norm) of every concept since the start of the current window of this many instances (0 = off)", 0, 0, Integer.MAX_VALUE);
+
+    // Consumed dense instances offered back for reuse (opt-in)
+    protected transient InstancePool instancePool = null;
+
+    // Lazy concepts: deactivated concepts are kept as serialized drift state only
+    protected DormantConcept[] dormantConcepts = null;
+    protected SortedIndexSet pendingEvictions = null;
+
+    /**
+     * Compact form of an evicted concept: the output of its writeState(), and its own RNG in parallel mode. The static
+     * part of the concept is re-created from (seed, class id) when it is activated again.
+     */
+    protected static class DormantConcept implements Serializable {
+        private static final long serialVersionUID = 1L;
+        protected final byte[] driftState;
+        protected final Random rng;
+
+        protected DormantConcept(byte[] p_driftState, Random p_rng) {
+            this.driftState = p_driftState;
+            this.rng = p_rng;
+        }
+    }
+
+    // Class priors (null for uniform), sampled through an alias table over the active concepts
+    protected double[] conceptPriors = null;
+    protected double[] activePriors = null;
+    protected AliasTable activePriorTable = null;
+    protected boolean activePriorTableStale = true;
+
+    // Drift event side channel (opt-in)
+    protected static final int DRIFT_EVENT_CAPACITY = 1 << 16;
+    protected transient DriftEventLog driftEvents = null;
+    protected transient DriftEventFileSink driftEventSink = null;
+
+    // Ground truth drift magnitude windows (opt-in)
+    protected long driftWindowStart = 0;
+    protected long driftWindowEnd = Long.MAX_VALUE;
+
+    // Checkpoint format identification
+    protected static final int CHECKPOINT_MAGIC = 0x49524E44; // "IRND"
+    protected static final int CHECKPOINT_VERSION = 2;
     
     protected InstancesHeader streamHeader;
     protected ArrayList<DriftingExemplarAttribute> featureSet;
+    protected int[] sharedNominalSizes;  // schema metadata shared by all flat exemplars
     
     protected int numClasses = 2;
     protected int numActiveClasses = 1; 
-    protected TreeSet<DriftingExemplarInstance> activeConcepts;
-    protected TreeSet<DriftingExemplarInstance> inactiveConcepts;
+    protected DriftingExemplarInstance[] concepts;  // indexed by concept/class ID
+    protected SortedIndexSet activeConcepts;         // IDs of active concepts
+    protected SortedIndexSet inactiveConcepts;       // IDs of inactive concepts
     
     protected Random rng; // Random Number Generator
+    protected long instanceIndex = 0; // logical clock: number of instances generated so far
+
+    // Parallel substream generation state (only used when parallelThreads > 0)
+    protected transient ExecutorService substreamWorkers;
+    protected ColumnarInstanceBatch parallelBuffer;  // block served to nextInstance()
+    protected int parallelBufferPos = 0;
+    protected long[] blockSchedule;                  // (concept ID << 32 | row) for each row of a block
+    protected int[] blockRunStarts;                  // first schedule entry of each concept in a block
 
     @Override
     public void prepareForUseImpl(TaskMonitor monitor,
@@ -116,12 +261,444 @@ public class InducedRandomNonStationaryDataGenerator extends AbstractOptionHandl
     
     @Override
     public void restart() {
-        this.rng = new Random(this.modelRandomSeedOption.getValue());
+        initialize();
+        resume(this.startInstanceOption.getValue());
+    }
+
+    /**
+     * Build a fresh model from the options and seed, positioned at instance 0
+     */
+    protected void initialize() {
+        this.rng = getRandomSource().create(this.modelRandomSeedOption.getValue());
+        this.instanceIndex = 0;
         this.numClasses = this.numClassesOption.getValue();
         this.numActiveClasses = (int) Math.ceil(this.percentActiveClassesOption.getValue()  / 100.0 * numClasses);
-        this.activeConcepts = new TreeSet<>();
-        this.inactiveConcepts = new TreeSet<>();
+        this.concepts = new DriftingExemplarInstance[this.numClasses];
+        this.dormantConcepts = this.lazyConceptsOption.isSet() ? new DormantConcept[this.numClasses] : null;
+        this.pendingEvictions = new SortedIndexSet(16);
+        this.activeConcepts = new SortedIndexSet(this.numActiveClasses + 1);
+        this.inactiveConcepts = new SortedIndexSet(this.numClasses - this.numActiveClasses);
+        initializePriors();
         generateHeader();
+        if (this.substreamWorkers != null) {
+            this.substreamWorkers.shutdownNow();
+            this.substreamWorkers = null;
+        }
+        this.parallelBuffer = null;
+        if (this.parallelThreadsOption.getValue() > 0) {
+            seedSubstreams();
+        }
+        this.instancePool = (this.instancePoolSizeOption.getValue() > 0)
+                ? new InstancePool(this.instancePoolSizeOption.getValue(), this.streamHeader.numAttributes()) : null;
+        if (this.lazyConceptsOption.isSet()) {
+            for (int i = 0; i < this.activeConcepts.size(); ++i) {
+                materializeConcept(this.activeConcepts.get(i), this.instanceIndex);
+            }
+        } else {
+            if (this.lazyDriftOption.isSet() || this.sparseInstancesOption.isSet()) {
+                for (DriftingExemplarInstance c : this.concepts) {
+                    c.startLazyDrift(0);
+                }
+            }
+            if (this.sparseInstancesOption.isSet()) {
+                for (DriftingExemplarInstance c : this.concepts) {
+                    c.setSparse();
+                }
+            }
+        }
+        attachDriftEvents();
+        startDriftWindows();
+    }
+
+    /**
+     * (Re)connect the drift event log, if anyone asked for it, to a freshly initialized model. Events of the previous
+     * run that were not drained yet are discarded, and the event file (if any) is started over.
+     */
+    protected void attachDriftEvents() {
+        if (this.driftEventSink != null) {
+            this.driftEvents.removeListener(this.driftEventSink);
+            try {
+                this.driftEventSink.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to close drift event file", e);
+            }
+            this.driftEventSink = null;
+        }
+        File eventFile = this.driftEventFileOption.getFile();
+        if (eventFile != null) {
+            if (this.driftEvents == null) {
+                this.driftEvents = new DriftEventLog(DRIFT_EVENT_CAPACITY);
+            }
+            this.driftEvents.clear();
+            try {
+                this.driftEventSink = new DriftEventFileSink(eventFile, this.driftEvents);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to create drift event file: " + eventFile, e);
+            }
+            // The sink drains this log and closes itself at exit if it is still open then
+            this.driftEvents.addListener(this.driftEventSink);
+        }
+        if (this.driftEvents != null) {
+            this.driftEvents.clear();
+            for (DriftingExemplarInstance c : this.concepts) {
+                if (c != null) {
+                    c.setDriftEventLog(this.driftEvents);
+                }
+            }
+        }
+    }
+
+    /**
+     * Turn on the drift event side channel (if the driftEventFile option has not already) and return it, e.g. to add
+     * listeners or to poll it with drain(listener)
+     *
+     * @return drift event log of this generator
+     */
+    public DriftEventLog getDriftEventLog() {
+        if (this.driftEvents == null) {
+            this.driftEvents = new DriftEventLog(DRIFT_EVENT_CAPACITY);
+            if (this.concepts != null) {
+                for (DriftingExemplarInstance c : this.concepts) {
+                    if (c != null) {
+                        c.setDriftEventLog(this.driftEvents);
+                    }
+                }
+            }
+        }
+        return this.driftEvents;
+    }
+
+    /**
+     * Hand all pending drift events to the listeners (including the event file)
+     */
+    public void flushDriftEvents() {
+        if (this.driftEvents != null) {
+            this.driftEvents.drain();
+        }
+    }
+
+    /**
+     * Position a freshly initialized generator at p_index, starting from the checkpoint file if there is a usable one
+     *
+     * @param p_index instance index to resume at
+     */
+    protected void resume(long p_index) {
+        File checkpoint = this.checkpointFileOption.getFile();
+        if (checkpoint != null && checkpoint.exists() && readCheckpointIndex(checkpoint) <= p_index) {
+            restoreState(checkpoint);
+        }
+        skipTo(p_index);
+    }
+
+    /**
+     * @param p_conceptId class id of the concept
+     * @return live exemplar of the concept, or null if it is a lazy concept that has not been built yet
+     */
+    public DriftingExemplarInstance getConcept(int p_conceptId) {
+        return this.concepts[p_conceptId];
+    }
+
+    /**
+     * @return number of instances handed out so far (i.e. index of the next instance)
+     */
+    public long getInstanceIndex() {
+        long buffered = (this.parallelBuffer != null) ? this.parallelBuffer.size() - this.parallelBufferPos : 0;
+        return this.instanceIndex - buffered;
+    }
+
+    /**
+     * Fast-forward (or rewind) the stream so that the next instance returned is instance p_index. Skipped instances
+     * are generated (the concepts must drift and the RNGs must advance exactly as usual), but never copied into
+     * Instance objects. Rewinding restarts from the seed or from the checkpoint file.
+     *
+     * @param p_index instance index to move to
+     */
+    public void skipTo(long p_index) {
+        if (p_index < getInstanceIndex()) {
+            initialize();
+            resume(p_index);
+            return;
+        }
+        long remaining = p_index - getInstanceIndex();
+        if (this.parallelBuffer != null) {
+            int fromBuffer = (int) Math.min(remaining, this.parallelBuffer.size() - this.parallelBufferPos);
+            this.parallelBufferPos += fromBuffer;
+            remaining -= fromBuffer;
+            while (remaining > 0) {
+                rollDriftWindow();
+                int n = driftWindowBlockLength(parallelBuffer.capacity());
+                generateParallelBlock(parallelBuffer.getAttributeValues(), parallelBuffer.getClassValues(), 0, n);
+                this.parallelBuffer.setSize(n);
+                this.parallelBufferPos = (int) Math.min(remaining, n);
+                remaining -= this.parallelBufferPos;
+            }
+            return;
+        }
+        for (long i = 0; i < remaining; ++i) {
+            rollDriftWindow();
+            selectConcept().step();
+            if (isLabelNoiseInjected()) {
+                rng.nextInt(numClasses);
+            }
+            shiftActiveConcepts(this.instanceIndex);
+        }
+    }
+
+    /**
+     * @return fingerprint of every option that affects the generated stream (not thread counts, checkpointing, or
+     * side outputs)
+     */
+    protected String getModelFingerprint() {
+        StringBuilder sb = new StringBuilder();
+        for (Option o : getOptions().getOptionArray()) {
+            if (o == this.parallelThreadsOption || o == this.flatExemplarsOption || o == this.startInstanceOption
+                    || o == this.checkpointFileOption || o == this.checkpointIntervalOption
+                    || o == this.instancePoolSizeOption || o == this.driftMagnitudeWindowOption
+                    || o == this.driftEventFileOption) {
+                continue;
+            }
+            sb.append('-').append(o.getCLIChar()).append(' ').append(o.getValueAsCLIString()).append(' ');
+        }
+        sb.append(this.parallelThreadsOption.getValue() > 0 ? "parallel" : "sequential");
+        return sb.toString();
+    }
+
+    /**
+     * Write a compact binary checkpoint of the dynamic generator state: position, RNG state(s), the active/inactive
+     * concept split, the drifting state of every exemplar, and any rows already generated but not yet handed out.
+     * Static model state is rebuilt from the options and seed on restore, so it is not written.
+     *
+     * @param p_out destination
+     * @throws IOException on write failure
+     */
+    public void writeState(DataOutputStream p_out) throws IOException {
+        p_out.writeInt(CHECKPOINT_MAGIC);
+        p_out.writeInt(CHECKPOINT_VERSION);
+        p_out.writeUTF(getModelFingerprint());
+        p_out.writeLong(getInstanceIndex());
+        p_out.writeLong(this.instanceIndex);
+
+        // RNG states: generator RNG, then one per concept in parallel (substream) mode
+        boolean substreams = this.parallelBuffer != null;
+        Random[] rngs = new Random[substreams ? this.concepts.length + 1 : 1];
+        rngs[0] = this.rng;
+        for (int i = 1; i < rngs.length; ++i) {
+            DriftingExemplarInstance c = this.concepts[i - 1];
+            DormantConcept dormant = (this.dormantConcepts != null) ? this.dormantConcepts[i - 1] : null;
+            rngs[i] = (c != null) ? c.rng : ((dormant != null) ? dormant.rng : null);
+        }
+        ByteArrayOutputStream rngBytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(rngBytes)) {
+            oos.writeObject(rngs);
+        }
+        p_out.writeInt(rngBytes.size());
+        rngBytes.writeTo(p_out);
+
+        p_out.writeInt(this.activeConcepts.size());
+        for (int i = 0; i < this.activeConcepts.size(); ++i) {
+            p_out.writeInt(this.activeConcepts.get(i));
+        }
+        // Concept drift states (absent for lazy concepts that were never activated)
+        for (int i = 0; i < this.concepts.length; ++i) {
+            byte[] state = null;
+            if (this.concepts[i] != null) {
+                state = serializeConcept(this.concepts[i]);
+            } else if (this.dormantConcepts != null && this.dormantConcepts[i] != null) {
+                state = this.dormantConcepts[i].driftState;
+            }
+            p_out.writeBoolean(state != null);
+            if (state != null) {
+                p_out.writeInt(state.length);
+                p_out.write(state);
+            }
+        }
+
+        int buffered = substreams ? this.parallelBuffer.size() - this.parallelBufferPos : 0;
+        p_out.writeInt(buffered);
+        for (int row = this.parallelBufferPos; row < this.parallelBufferPos + buffered; ++row) {
+            for (double[] column : this.parallelBuffer.getAttributeValues()) {
+                p_out.writeDouble(column[row]);
+            }
+            p_out.writeInt(this.parallelBuffer.getClassValues()[row]);
+        }
+    }
+
+    /**
+     * Restore a checkpoint written by writeState(). The generator must have been (re)started with the same model
+     * options and seed.
+     *
+     * @param p_in source
+     * @throws IOException on read failure or if the checkpoint does not match this generator
+     */
+    public void readState(DataInputStream p_in) throws IOException {
+        if (p_in.readInt() != CHECKPOINT_MAGIC || p_in.readInt() != CHECKPOINT_VERSION) {
+            throw new IOException("Not an IRND generator checkpoint (or unsupported version)");
+        }
+        String fingerprint = p_in.readUTF();
+        if (!fingerprint.equals(getModelFingerprint())) {
+            throw new IOException("Checkpoint was written by a generator with different options: " + fingerprint);
+        }
+        p_in.readLong(); // position handed out, implied by the buffered rows below
+        this.instanceIndex = p_in.readLong();
+
+        byte[] rngBytes = new byte[p_in.readInt()];
+        p_in.readFully(rngBytes);
+        Random[] rngs;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(rngBytes))) {
+            rngs = (Random[]) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unreadable RNG state in checkpoint", e);
+        }
+        this.rng = rngs[0];
+
+        this.activeConcepts.clear();
+        this.inactiveConcepts.clear();
+        for (int i = 0; i < this.numClasses; ++i) {
+            this.inactiveConcepts.add(i);
+        }
+        int numActive = p_in.readInt();
+        for (int i = 0; i < numActive; ++i) {
+            int conceptId = p_in.readInt();
+            this.inactiveConcepts.remove(conceptId);
+            this.activeConcepts.add(conceptId);
+        }
+        this.activePriorTableStale = true;
+        for (int i = 0; i < this.concepts.length; ++i) {
+            Random conceptRng = (rngs.length > 1) ? rngs[i + 1] : this.rng;
+            byte[] state = null;
+            if (p_in.readBoolean()) {
+                state = new byte[p_in.readInt()];
+                p_in.readFully(state);
+            }
+            if (this.dormantConcepts != null) {
+                this.concepts[i] = null;
+                this.dormantConcepts[i] = (state != null) ? new DormantConcept(state, (rngs.length > 1) ? conceptRng : null) : null;
+            } else {
+                this.concepts[i].setRandom(conceptRng);
+                this.concepts[i].readState(new DataInputStream(new ByteArrayInputStream(state)));
+            }
+        }
+        if (this.dormantConcepts != null) {
+            for (int i = 0; i < this.activeConcepts.size(); ++i) {
+                materializeConcept(this.activeConcepts.get(i), this.instanceIndex);
+            }
+        }
+
+        int buffered = p_in.readInt();
+        if (this.parallelBuffer != null) {
+            for (int row = 0; row < buffered; ++row) {
+                for (double[] column : this.parallelBuffer.getAttributeValues()) {
+                    column[row] = p_in.readDouble();
+                }
+                this.parallelBuffer.getClassValues()[row] = p_in.readInt();
+            }
+            this.parallelBuffer.setSize(buffered);
+            this.parallelBufferPos = 0;
+        }
+        startDriftWindows();
+    }
+
+    /**
+     * Atomically (write to a temporary file, then rename) save a checkpoint
+     *
+     * @param p_file destination file
+     */
+    public void saveState(File p_file) {
+        File tmp = new File(p_file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                writeState(out);
+            }
+            Files.move(tmp.toPath(), p_file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write generator checkpoint: " + p_file, e);
+        }
+    }
+
+    /**
+     * Restore a checkpoint saved by saveState()
+     *
+     * @param p_file checkpoint file
+     */
+    public void restoreState(File p_file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(p_file)))) {
+            readState(in);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to restore generator checkpoint: " + p_file, e);
+        }
+    }
+
+    /**
+     * @param p_file checkpoint file
+     * @return instance index the checkpoint was taken at
+     */
+    protected long readCheckpointIndex(File p_file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(p_file)))) {
+            in.readInt();
+            in.readInt();
+            in.readUTF();
+            return in.readLong();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read generator checkpoint: " + p_file, e);
+        }
+    }
+
+    /**
+     * Write a checkpoint if an interval boundary was crossed while handing out instances
+     *
+     * @param p_indexBefore getInstanceIndex() before handing out the instances
+     */
+    protected void checkpointIfDue(long p_indexBefore) {
+        int interval = this.checkpointIntervalOption.getValue();
+        if (interval > 0 && this.checkpointFileOption.getFile() != null
+                && (p_indexBefore / interval) != (getInstanceIndex() / interval)) {
+            saveState(this.checkpointFileOption.getFile());
+        }
+    }
+
+    /**
+     * Create a concept exemplar in the layout selected by the user. Both layouts consume the same random draws and
+     * produce the same stream.
+     *
+     * @see DriftingExemplarInstance#DriftingExemplarInstance
+     */
+    protected DriftingExemplarInstance newExemplar(ArrayList<DriftingExemplarAttribute> p_featureSet, int p_labelValue,
+            int p_maxActive, double p_probAttributeActivation, double p_maxVelocity, double p_probVelShift,
+            double p_variance, int p_GMMSize, Random p_rng) {
+        if (this.flatExemplarsOption.isSet()) {
+            if (this.sharedNominalSizes == null) {
+                this.sharedNominalSizes = FlatDriftingExemplarInstance.nominalSizes(p_featureSet.subList(0, p_featureSet.size() - 1));
+            }
+            return new FlatDriftingExemplarInstance(p_featureSet, p_labelValue, p_maxActive, p_probAttributeActivation,
+                    p_maxVelocity, p_probVelShift, p_variance, p_GMMSize, p_rng, this.sharedNominalSizes);
+        }
+        return new DriftingExemplarInstance(p_featureSet, p_labelValue, p_maxActive, p_probAttributeActivation,
+                p_maxVelocity, p_probVelShift, p_variance, p_GMMSize, p_rng);
+    }
+
+    /**
+     * @return random number engine selected by the user
+     */
+    protected RandomSource getRandomSource() {
+        return RandomSource.values()[this.randomSourceOption.getChosenIndex()];
+    }
+
+    /**
+     * Give every concept its own independently seeded RNG, derived only from the model seed. The generator's own RNG
+     * is then only used for concept scheduling, label noise, and concept exchange.
+     */
+    protected void seedSubstreams() {
+        SplittableRandom seeder = new SplittableRandom(this.modelRandomSeedOption.getValue());
+        for (DriftingExemplarInstance c : this.concepts) {
+            if (c != null) { // lazy concepts get their substream when materialized
+                c.setRandom(getRandomSource().create(seeder.split().nextLong()));
+            }
+        }
+        int blockSize = this.parallelBlockSizeOption.getValue();
+        this.parallelBuffer = new ColumnarInstanceBatch(streamHeader, blockSize);
+        this.parallelBufferPos = 0;
+        this.blockSchedule = new long[blockSize];
+        this.blockRunStarts = new int[blockSize + 1];
     }
 
     /**
@@ -132,6 +709,7 @@ public class InducedRandomNonStationaryDataGenerator extends AbstractOptionHandl
         int numNumericAtts = this.numNumericAttributesOption.getValue();
         int numTotalAtts = numNominalAtts + numNumericAtts;
         this.featureSet = new ArrayList<>(numTotalAtts + 1);
+        this.sharedNominalSizes = null;
         int j = 1;
         for (int i = 0; i < numNumericAtts; i++) {
             DriftingExemplarAttribute newFeature = new DriftingExemplarAttribute("Attr_" + j + "_Num", j, rng);
@@ -170,22 +748,14 @@ public class InducedRandomNonStationaryDataGenerator extends AbstractOptionHandl
         //Create initial exemplars/centroid for concept classes
         
         for(int i = 0; i < numClasses; ++i) {
-            DriftingExemplarInstance c = new DriftingExemplarInstance(
-                    featureSet, // Attribute mapping
-                    i,      // Instance ID
-                    (int) (numTotalAtts * this.percentActiveAttributesOption.getValue()  / 100.0),   // Num Active Attributes
-                    this.attributeActivationProbabilityOption.getValue()  / 100.0,                   // P(change)
-                    this.attributeVelocityOption.getValue()  / 100.0,                                // attribute velocity
-                    this.attributeVelocityShiftProbabilityOption.getValue()  / 100.0,                // p(change(velocity)
-                    this.attributeNoiseOption.getValue()  / 100.0,                                   // variance/noise
-                    this.maxNumCentroidsPerClassOption.getValue(),                          // GMM size
-                    this.rng);                                                              // shared Random Number Generator
-            c.setDataset(streamHeader);
+            if (!this.lazyConceptsOption.isSet()) {
+                this.concepts[i] = createConcept(i, this.rng);
+            }
             if (i <= this.numActiveClasses) {
-                this.activeConcepts.add(c);
+                this.activeConcepts.add(i);
             }
             else {
-                this.inactiveConcepts.add(c);
+                this.inactiveConcepts.add(i);
             }
         }
         if (this.activeConcepts.isEmpty())
@@ -194,39 +764,534 @@ public class InducedRandomNonStationaryDataGenerator extends AbstractOptionHandl
         }
     }
     
+    /**
+     * Create the exemplar of one concept
+     *
+     * @param p_conceptId class id of the concept
+     * @param p_rng random number generator to build it with
+     * @return new concept exemplar
+     */
+    protected DriftingExemplarInstance createConcept(int p_conceptId, Random p_rng) {
+        int numTotalAtts = this.featureSet.size() - 1;
+        DriftingExemplarInstance c = newExemplar(
+                featureSet, // Attribute mapping
+                p_conceptId,      // Instance ID
+                (int) (numTotalAtts * this.percentActiveAttributesOption.getValue()  / 100.0),   // Num Active Attributes
+                this.attributeActivationProbabilityOption.getValue()  / 100.0,                   // P(change)
+                this.attributeVelocityOption.getValue()  / 100.0,                                // attribute velocity
+                this.attributeVelocityShiftProbabilityOption.getValue()  / 100.0,                // p(change(velocity)
+                this.attributeNoiseOption.getValue()  / 100.0,                                   // variance/noise
+                this.maxNumCentroidsPerClassOption.getValue(),                          // GMM size
+                p_rng);                                                                 // Random Number Generator
+        if (this.featureCorrelationOption.getValue() > 0) {
+            // Loadings drift as often as the velocity of a single attribute shifts
+            c.setCorrelatedNoise(new CorrelatedAttributeNoise(numTotalAtts, this.correlationFactorsOption.getValue(),
+                    this.featureCorrelationOption.getValue() / 100.0,
+                    this.attributeVelocityShiftProbabilityOption.getValue() / 100.0, p_rng));
+        }
+        if (this.driftMagnitudeWindowOption.getValue() > 0) {
+            c.trackDriftMagnitude();
+        }
+        c.setDataset(streamHeader);
+        return c;
+    }
+
+    /**
+     * Lazy concepts: build a concept from (seed, class id), so it is the same whichever order concepts are activated
+     * in, and bring it back to its evicted drift state if it was active before. Nothing is drawn from the generator
+     * RNG, so materializing does not perturb the stream.
+     *
+     * @param p_conceptId class id of the concept
+     * @param p_time index of the first instance the concept may produce (start of its lazy drift clock). In parallel
+     * mode instanceIndex already points past the block being laid out, so callers must pass the position explicitly.
+     * @return live concept exemplar
+     */
+    protected DriftingExemplarInstance materializeConcept(int p_conceptId, long p_time) {
+        SplittableRandom seeds = new SplittableRandom(this.modelRandomSeedOption.getValue() + p_conceptId * 0x9E3779B97F4A7C15L);
+        Random constructionRng = getRandomSource().create(seeds.nextLong());
+        // Attribute copies draw from the RNG of the prototype attributes, so point those at the construction RNG too
+        for (DriftingExemplarAttribute a : this.featureSet) {
+            a.setRandom(constructionRng);
+        }
+        DriftingExemplarInstance c = createConcept(p_conceptId, constructionRng);
+        if (this.lazyDriftOption.isSet() || this.sparseInstancesOption.isSet()) {
+            c.startLazyDrift(p_time);
+        }
+        if (this.sparseInstancesOption.isSet()) {
+            c.setSparse();
+        }
+        DormantConcept dormant = this.dormantConcepts[p_conceptId];
+        if (this.parallelBuffer != null) {
+            c.setRandom((dormant != null) ? dormant.rng : getRandomSource().create(seeds.nextLong()));
+        } else {
+            c.setRandom(this.rng);
+        }
+        if (dormant != null) {
+            try {
+                c.readState(new DataInputStream(new ByteArrayInputStream(dormant.driftState)));
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to restore concept " + p_conceptId, e);
+            }
+            this.dormantConcepts[p_conceptId] = null;
+            if (c.getDriftMagnitude() != null) {
+                // The drift of the current window before the concept was evicted is not known any more
+                c.startDriftWindow();
+            }
+        }
+        if (this.driftEvents != null) {
+            c.setDriftEventLog(this.driftEvents);
+        }
+        this.concepts[p_conceptId] = c;
+        return c;
+    }
+
+    /**
+     * Lazy concepts: replace a concept by its compact dormant form
+     *
+     * @param p_conceptId class id of the (inactive) concept
+     */
+    protected void evictConcept(int p_conceptId) {
+        DriftingExemplarInstance c = this.concepts[p_conceptId];
+        this.dormantConcepts[p_conceptId] = new DormantConcept(serializeConcept(c), (this.parallelBuffer != null) ? c.rng : null);
+        this.concepts[p_conceptId] = null;
+    }
+
+    /**
+     * Evict the concepts deactivated during a parallel block (they may still have had rows to produce in it)
+     */
+    protected void evictPendingConcepts() {
+        for (int i = 0; i < this.pendingEvictions.size(); ++i) {
+            int conceptId = this.pendingEvictions.get(i);
+            if (this.concepts[conceptId] != null && !this.activeConcepts.contains(conceptId)) {
+                evictConcept(conceptId);
+            }
+        }
+        this.pendingEvictions.clear();
+    }
+
+    /**
+     * @param p_concept concept exemplar
+     * @return output of its writeState()
+     */
+    protected static byte[] serializeConcept(DriftingExemplarInstance p_concept) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            p_concept.writeState(out);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to serialize concept", e);
+        }
+        return bytes.toByteArray();
+    }
+
     @Override
     public Instance nextInstance() {
+        rollDriftWindow();
+        Instance ret = generateInstance();
+        if (this.checkpointIntervalOption.getValue() > 0) {
+            checkpointIfDue(getInstanceIndex() - 1);
+        }
+        return ret;
+    }
+
+    /**
+     * Start the next drift magnitude window if the stream has reached the end of the current one. Every path that
+     * advances the stream calls this before each instance (or parallel block), and parallel blocks end at window
+     * boundaries (see driftWindowBlockLength()), so windows roll exactly at their boundary.
+     */
+    protected void rollDriftWindow() {
+        if (getInstanceIndex() >= this.driftWindowEnd) {
+            startDriftWindows();
+        }
+    }
+
+    /**
+     * @param p_max largest block wanted
+     * @return length of the next parallel block: p_max, cut short at the end of the current drift magnitude window.
+     * Block boundaries do not change the stream.
+     */
+    protected int driftWindowBlockLength(int p_max) {
+        return (int) Math.min(p_max, this.driftWindowEnd - this.instanceIndex);
+    }
+
+    /**
+     * Start a new drift magnitude window for every live concept at the current position. Windows are aligned to
+     * multiples of driftMagnitudeWindow, except after a restore, which starts a fresh (shorter) one.
+     */
+    protected void startDriftWindows() {
+        int window = this.driftMagnitudeWindowOption.getValue();
+        if (window <= 0) {
+            this.driftWindowEnd = Long.MAX_VALUE;
+            return;
+        }
+        for (DriftingExemplarInstance c : this.concepts) {
+            if (c != null && c.getDriftMagnitude() != null) {
+                c.startDriftWindow();
+            }
+        }
+        this.driftWindowStart = getInstanceIndex();
+        this.driftWindowEnd = (this.driftWindowStart / window + 1) * window;
+    }
+
+    /**
+     * Ground truth drift of the concepts since the start of the current window (see driftMagnitudeWindow): the mean
+     * and maximum KL divergence and the mean velocity norm over the active concepts, then the KL divergence and
+     * velocity norm of every concept (0 while a lazy concept is evicted). In parallel mode concepts may have drifted up
+     * to the end of the block being served (which never extends past the window). Nothing is reported if the window
+     * is off.
+     *
+     * @return drift magnitude measurements
+     */
+    @Override
+    public Measurement[] getStreamMeasurements() {
+        if (this.driftMagnitudeWindowOption.getValue() <= 0 || this.concepts == null) {
+            return new Measurement[0];
+        }
+        Measurement[] ret = new Measurement[4 + 2 * this.numClasses];
+        double sumDivergence = 0;
+        double maxDivergence = 0;
+        double sumVelocity = 0;
+        int numActive = this.activeConcepts.size();
+        for (int i = 0; i < numActive; ++i) {
+            DriftingExemplarInstance c = this.concepts[this.activeConcepts.get(i)];
+            DriftMagnitudeTracker t = (c != null) ? c.getDriftMagnitude() : null;
+            if (t != null) {
+                sumDivergence += t.getDivergence();
+                maxDivergence = Math.max(maxDivergence, t.getDivergence());
+                sumVelocity += t.getVelocityNorm();
+            }
+        }
+        ret[0] = new Measurement("drift window start", this.driftWindowStart);
+        ret[1] = new Measurement("mean active concept drift (KL)", (numActive > 0) ? sumDivergence / numActive : 0);
+        ret[2] = new Measurement("max active concept drift (KL)", maxDivergence);
+        ret[3] = new Measurement("mean active concept velocity norm", (numActive > 0) ? sumVelocity / numActive : 0);
+        for (int i = 0; i < this.numClasses; ++i) {
+            DriftMagnitudeTracker t = (this.concepts[i] != null) ? this.concepts[i].getDriftMagnitude() : null;
+            ret[4 + 2 * i] = new Measurement("concept " + i + " drift (KL)", (t != null) ? t.getDivergence() : 0);
+            ret[5 + 2 * i] = new Measurement("concept " + i + " velocity norm", (t != null) ? t.getVelocityNorm() : 0);
+        }
+        return ret;
+    }
+
+    /**
+     * @return next instance of the stream
+     */
+    protected Instance generateInstance() {
+        if (this.parallelBuffer != null) {
+            if (this.parallelBufferPos >= this.parallelBuffer.size()) {
+                int n = driftWindowBlockLength(parallelBuffer.capacity());
+                generateParallelBlock(parallelBuffer.getAttributeValues(), parallelBuffer.getClassValues(), 0, n);
+                this.parallelBuffer.setSize(n);
+                this.parallelBufferPos = 0;
+            }
+            if (this.sparseInstancesOption.isSet()) {
+                return this.parallelBuffer.sparseInstance(this.parallelBufferPos++);
+            }
+            return this.parallelBuffer.instance(this.parallelBufferPos++, this.instancePool);
+        }
+
         // 1.) Pick a concept at weighted random
-        DriftingExemplarInstance[] activeConceptsArray = activeConcepts.toArray(new DriftingExemplarInstance[1]);
-        int nextConceptIdx = rng.nextInt(activeConceptsArray.length);
+        DriftingExemplarInstance concept = selectConcept();
 
         // 2.) Pull the sampled Instance from the concept
-        DenseInstance candidateInstance = activeConceptsArray[nextConceptIdx].nextInstance();
-        Instance inst = new DenseInstance(candidateInstance);
+        Instance inst;
+        if (this.sparseInstancesOption.isSet()) {
+            inst = concept.nextSparseInstance();
+        } else if (this.instancePool != null) {
+            // Overwrite a recycled instance in place rather than copying the sample into a new one
+            InstancePool.PooledInstance pooled = this.instancePool.take();
+            concept.nextValues(pooled.values());
+            pooled.setWeight(concept.weight());
+            inst = pooled;
+        } else {
+            DenseInstance candidateInstance = concept.nextInstance();
+            inst = new DenseInstance(candidateInstance);
+        }
         inst.setDataset(getHeader());
         
         // 3.) Add label noise
-        if (rng.nextDouble() < this.labelNoiseOption.getValue()  / 100.0)
+        if (isLabelNoiseInjected())
         {
-            inst.setClassValue(rng.nextInt(numClasses));
+            if (inst instanceof InstancePool.PooledInstance) {
+                // setClassValue() would copy the value array first
+                ((InstancePool.PooledInstance) inst).values()[inst.classIndex()] = rng.nextInt(numClasses);
+            } else {
+                inst.setClassValue(rng.nextInt(numClasses));
+            }
         }
         
         // 4.) Shift active concepts
-        if (!inactiveConcepts.isEmpty() && rng.nextDouble() < this.classActivationProbabilityOption.getValue()  / 100.0)
-        {
-            DriftingExemplarInstance[] inactiveConceptsArray = inactiveConcepts.toArray(new DriftingExemplarInstance[1]);
-            int idxToActivate   = rng.nextInt(inactiveConceptsArray.length);
-            int idxToDeactivate = rng.nextInt(activeConceptsArray.length);
-            activeConcepts.add(inactiveConceptsArray[idxToActivate]);
-            activeConcepts.remove(activeConceptsArray[idxToDeactivate]);
-            inactiveConcepts.add(activeConceptsArray[idxToDeactivate]);
-            inactiveConcepts.remove(inactiveConceptsArray[idxToActivate]);
-        }
+        shiftActiveConcepts(this.instanceIndex);
         
         //5.) Return new instance
         return inst;
     }
 
+    /**
+     * @return pool of consumed instances to overwrite, or null unless instancePoolSize is set. A new pool is created
+     * on every restart().
+     */
+    @Override
+    public InstancePool getInstancePool() {
+        return this.instancePool;
+    }
+
+    /**
+     * Labels are concept ids (never missing) and every instance has unit weight
+     */
+    @Override
+    public boolean hasExactBatches() {
+        return true;
+    }
+
+    @Override
+    public int nextInstances(ColumnarInstanceBatch p_batch) {
+        int ret = nextInstances(p_batch.getAttributeValues(), p_batch.getClassValues(), 0, p_batch.capacity());
+        p_batch.setSize(ret);
+        return ret;
+    }
+
+    /**
+     * Generate a block of instances directly into primitive column buffers. This draws from the RNG in exactly the
+     * same order as calling nextInstance() p_count times, so both paths produce the same stream for a given seed.
+     *
+     * @param p_attributeValues destination, [attribute][row], for every attribute except the (last) class attribute
+     * @param p_classValues destination class labels, [row]
+     * @param p_offset first row to write
+     * @param p_count number of rows to write
+     * @return number of rows written
+     */
+    public int nextInstances(double[][] p_attributeValues, int[] p_classValues, int p_offset, int p_count) {
+        long indexBefore = getInstanceIndex();
+        int ret = generateInstances(p_attributeValues, p_classValues, p_offset, p_count);
+        if (this.checkpointIntervalOption.getValue() > 0) {
+            checkpointIfDue(indexBefore);
+        }
+        return ret;
+    }
+
+    /**
+     * @see #nextInstances(double[][], int[], int, int)
+     */
+    protected int generateInstances(double[][] p_attributeValues, int[] p_classValues, int p_offset, int p_count) {
+        if (this.parallelBuffer != null) {
+            int row = p_offset;
+            // Hand out rows already generated for nextInstance() first, so both APIs stay on one sequence
+            for (; row < p_offset + p_count && this.parallelBufferPos < this.parallelBuffer.size(); ++row) {
+                for (int i = 0; i < p_attributeValues.length; ++i) {
+                    p_attributeValues[i][row] = this.parallelBuffer.getAttributeValues()[i][this.parallelBufferPos];
+                }
+                p_classValues[row] = this.parallelBuffer.getClassValues()[this.parallelBufferPos++];
+            }
+            while (row < p_offset + p_count) {
+                rollDriftWindow();
+                int n = driftWindowBlockLength(Math.min(this.blockSchedule.length, p_offset + p_count - row));
+                generateParallelBlock(p_attributeValues, p_classValues, row, n);
+                row += n;
+            }
+            return p_count;
+        }
+        for (int row = p_offset; row < p_offset + p_count; ++row) {
+            rollDriftWindow();
+            int label = selectConcept().nextValues(p_attributeValues, row);
+            if (isLabelNoiseInjected()) {
+                label = rng.nextInt(numClasses);
+            }
+            p_classValues[row] = label;
+            shiftActiveConcepts(this.instanceIndex);
+        }
+        return p_count;
+    }
+
+    /**
+     * Generate up to parallelBlockSize instances using the per-concept substreams. The generator RNG first lays out the
+     * whole block sequentially (which concept produces each row, label noise, and concept exchanges). The rows of each
+     * concept are then produced in row order by a single worker, with concepts spread across the workers. Since each
+     * concept only draws from its own RNG, the result depends on the seed alone and not on the number of threads or
+     * the order the workers run in.
+     *
+     * @param p_attributeValues destination, [attribute][row], for every attribute except the (last) class attribute
+     * @param p_classValues destination class labels, [row]
+     * @param p_offset first row to write
+     * @param p_count number of rows to write (at most parallelBlockSize)
+     */
+    protected void generateParallelBlock(final double[][] p_attributeValues, int[] p_classValues, final int p_offset, int p_count) {
+        // 1.) Lay out the block sequentially. Note the concept ID doubles as its class label.
+        final long blockStartTime = this.instanceIndex;
+        this.instanceIndex += p_count;
+        for (int i = 0; i < p_count; ++i) {
+            int conceptId = selectConceptId();
+            this.blockSchedule[i] = ((long) conceptId << 32) | i;
+            p_classValues[p_offset + i] = isLabelNoiseInjected() ? rng.nextInt(numClasses) : conceptId;
+            shiftActiveConcepts(blockStartTime + i + 1);
+        }
+
+        // 2.) Group rows by concept, keeping each concept's rows in ascending order
+        Arrays.sort(this.blockSchedule, 0, p_count);
+        int numRuns = 0;
+        for (int i = 0; i < p_count; ++i) {
+            if (i == 0 || (this.blockSchedule[i] >>> 32) != (this.blockSchedule[i - 1] >>> 32)) {
+                this.blockRunStarts[numRuns++] = i;
+            }
+        }
+        this.blockRunStarts[numRuns] = p_count;
+
+        // 3.) Let the workers claim concepts and produce their rows
+        final int totalRuns = numRuns;
+        final AtomicInteger nextRun = new AtomicInteger(0);
+        Callable<Void> worker = () -> {
+            for (int run = nextRun.getAndIncrement(); run < totalRuns; run = nextRun.getAndIncrement()) {
+                for (int k = blockRunStarts[run]; k < blockRunStarts[run + 1]; ++k) {
+                    DriftingExemplarInstance concept = concepts[(int) (blockSchedule[k] >>> 32)];
+                    int row = (int) blockSchedule[k];
+                    concept.setTime(blockStartTime + row);
+                    concept.nextValues(p_attributeValues, p_offset + row);
+                }
+            }
+            return null;
+        };
+        if (this.substreamWorkers == null) {
+            this.substreamWorkers = Executors.newFixedThreadPool(this.parallelThreadsOption.getValue(), (Runnable r) -> {
+                Thread t = new Thread(r, "IRND-substream-worker");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        try {
+            for (Future<Void> f : this.substreamWorkers.invokeAll(Collections.nCopies(this.parallelThreadsOption.getValue(), worker))) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while generating parallel substreams", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Parallel substream generation failed", e.getCause());
+        }
+        if (this.dormantConcepts != null) {
+            evictPendingConcepts();
+        }
+    }
+
+    /**
+     * Pick the concept that will produce the next instance
+     * @return active concept exemplar
+     */
+    protected DriftingExemplarInstance selectConcept() {
+        DriftingExemplarInstance ret = concepts[selectConceptId()];
+        ret.setTime(this.instanceIndex++);
+        return ret;
+    }
+
+    /**
+     * Draw an active concept according to the class prior. The alias table is only rebuilt (in O(active concepts))
+     * after the active set has changed; each draw is O(1).
+     *
+     * @return id of the active concept that will produce the next instance
+     */
+    protected int selectConceptId() {
+        if (this.conceptPriors == null) {
+            return activeConcepts.get(rng.nextInt(activeConcepts.size()));
+        }
+        if (this.activePriorTableStale) {
+            for (int i = 0; i < activeConcepts.size(); ++i) {
+                this.activePriors[i] = this.conceptPriors[activeConcepts.get(i)];
+            }
+            if (!this.activePriorTable.build(this.activePriors, activeConcepts.size())) {
+                // Every active concept has zero prior; fall back to uniform rather than stall
+                Arrays.fill(this.activePriors, 0, activeConcepts.size(), 1.0);
+                this.activePriorTable.build(this.activePriors, activeConcepts.size());
+            }
+            this.activePriorTableStale = false;
+        }
+        return activeConcepts.get(this.activePriorTable.sample(rng));
+    }
+
+    /**
+     * Compute the prior weight of every concept from the classPrior options (null for the uniform prior)
+     */
+    protected void initializePriors() {
+        this.activePriorTableStale = true;
+        double a = this.classPriorParameterOption.getValue();
+        switch (this.classPriorOption.getChosenIndex()) {
+            case 1: // Zipf: already relative to the largest (first) weight, so it can only underflow to 0
+                this.conceptPriors = new double[numClasses];
+                for (int i = 0; i < numClasses; ++i) {
+                    this.conceptPriors[i] = 1.0 / Math.pow(i + 1, a);
+                }
+                break;
+            case 2: // Geometric, relative to the largest weight (the last one if a > 1) so it cannot overflow
+                this.conceptPriors = new double[numClasses];
+                int largest = (a > 1) ? numClasses - 1 : 0;
+                for (int i = 0; i < numClasses; ++i) {
+                    this.conceptPriors[i] = Math.pow(a, i - largest);
+                }
+                break;
+            case 3: // User supplied weights
+                String[] weights = this.classWeightsOption.getValue().split(",");
+                if (weights.length != numClasses) {
+                    throw new IllegalArgumentException("classWeights must list " + numClasses + " weights, got " + weights.length);
+                }
+                this.conceptPriors = new double[numClasses];
+                double total = 0;
+                for (int i = 0; i < numClasses; ++i) {
+                    this.conceptPriors[i] = Double.parseDouble(weights[i].trim());
+                    if (!(this.conceptPriors[i] >= 0) || Double.isInfinite(this.conceptPriors[i])) {
+                        throw new IllegalArgumentException("classWeights must be finite and non-negative: " + weights[i]);
+                    }
+                    total += this.conceptPriors[i];
+                }
+                if (Double.isInfinite(total)) {
+                    throw new IllegalArgumentException("classWeights are too large: their sum overflows");
+                }
+                break;
+            default: // Uniform: keep the original selection (and stream)
+                this.conceptPriors = null;
+                return;
+        }
+        this.activePriors = new double[numClasses];
+        this.activePriorTable = new AliasTable(numClasses);
+    }
+
+    /**
+     * @return true if the label of the current instance should be replaced with a random one
+     */
+    protected boolean isLabelNoiseInjected() {
+        return rng.nextDouble() < this.labelNoiseOption.getValue()  / 100.0;
+    }
+
+    /**
+     * Possibly exchange an active concept for an inactive one (concept evolution)
+     *
+     * @param p_nextIndex index of the first instance generated with the new active set (for drift events)
+     */
+    protected void shiftActiveConcepts(long p_nextIndex) {
+        if (!inactiveConcepts.isEmpty() && rng.nextDouble() < this.classActivationProbabilityOption.getValue()  / 100.0)
+        {
+            int idxToActivate   = rng.nextInt(inactiveConcepts.size());
+            int idxToDeactivate = rng.nextInt(activeConcepts.size());
+            int conceptToActivate   = inactiveConcepts.get(idxToActivate);
+            int conceptToDeactivate = activeConcepts.get(idxToDeactivate);
+            activeConcepts.remove(conceptToDeactivate);
+            activeConcepts.add(conceptToActivate);
+            inactiveConcepts.remove(conceptToActivate);
+            inactiveConcepts.add(conceptToDeactivate);
+            this.activePriorTableStale = true;
+            if (this.dormantConcepts != null) {
+                if (this.concepts[conceptToActivate] == null) {
+                    materializeConcept(conceptToActivate, p_nextIndex);
+                }
+                if (this.parallelBuffer != null) {
+                    this.pendingEvictions.add(conceptToDeactivate);
+                } else {
+                    evictConcept(conceptToDeactivate);
+                }
+            }
+            if (this.driftEvents != null) {
+                this.driftEvents.record(p_nextIndex, conceptToActivate, DriftEventLog.CONCEPT_ACTIVATED, -1);
+                this.driftEvents.record(p_nextIndex, conceptToDeactivate, DriftEventLog.CONCEPT_DEACTIVATED, -1);
+            }
+        }
+    }
+
     /**
      * Creates a random bag of words for use by nominal attributes
      * @param size number of random words to create. Size of each word will be at least 4 char, but will scale to qty of words
@@ -271,7 +1336,51 @@ public class InducedRandomNonStationaryDataGenerator extends AbstractOptionHandl
     
     @Override
     public void getDescription(StringBuilder sb, int indent) {
-        // TODO Auto-generated method stub
+        if (this.concepts != null) {
+            sb.append(getFootprintReport());
+        }
+    }
+
+    /**
+     * Estimate how much memory the model takes, to help size runs with many classes and attributes. The WEKA attributes
+     * are schema metadata shared by all concepts; what grows with numClasses x attributes is the per-concept state.
+     *
+     * @return human readable report
+     */
+    public String getFootprintReport() {
+        int numNominalValues = 0;
+        for (DriftingExemplarAttribute a : this.featureSet) {
+            numNominalValues += (a.getAttribute().isNominal() || a.getAttribute().isString()) ? a.getAttribute().numValues() : 0;
+        }
+        long total = 0;
+        int numLive = 0;
+        for (DriftingExemplarInstance c : this.concepts) {
+            if (c != null) {
+                total += c.estimateFootprint();
+                ++numLive;
+            }
+        }
+        long dormantTotal = 0;
+        int numDormant = 0;
+        if (this.dormantConcepts != null) {
+            for (DormantConcept d : this.dormantConcepts) {
+                if (d != null) {
+                    dormantTotal += 48 + d.driftState.length + ((d.rng != null) ? 48 : 0);
+                    ++numDormant;
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("Model footprint estimate (64-bit JVM, compressed references):\n");
+        sb.append(String.format("  shared schema: %d attributes, %d nominal values\n", this.featureSet.size(), numNominalValues));
+        sb.append(String.format("  per concept:   %d bytes (%s layout)\n", total / Math.max(1, numLive),
+                this.flatExemplarsOption.isSet() ? "flat" : "object"));
+        sb.append(String.format("  %d live concepts: %.1f MB\n", numLive, total / (1024.0 * 1024.0)));
+        if (this.dormantConcepts != null) {
+            sb.append(String.format("  %d dormant concepts: %.1f MB (%d never materialized)\n", numDormant,
+                    dormantTotal / (1024.0 * 1024.0), this.concepts.length - numLive - numDormant));
+        }
+        return sb.toString();
     }
 
 }
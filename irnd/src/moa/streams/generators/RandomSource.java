@@ -0,0 +1,98 @@
+/*
+ *    RandomSource.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.generators;
+
+import java.util.Random;
+
+/**
+ * RandomSource.java
+ *
+ * Pluggable random number engines for the generators. Every engine is handed out as a java.util.Random (sub)class so
+ * that the exemplars and attributes can use any of them without modification.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public enum RandomSource {
+
+    /**
+     * The original java.util.Random (reproduces all previously published streams)
+     */
+    JavaUtilRandom("java.util.Random (48-bit LCG, polar Gaussian). Reproduces previously generated streams.") {
+        @Override
+        public Random create(long p_seed) {
+            return new Random(p_seed);
+        }
+    },
+
+    /**
+     * Unsynchronized xoroshiro128+ with ziggurat Gaussian sampling
+     */
+    XoRoShiRo128Plus("xoroshiro128+ with ziggurat Gaussian. Faster, but produces a different stream for the same seed.") {
+        @Override
+        public Random create(long p_seed) {
+            return new XoRoShiRo128PlusRandom(p_seed);
+        }
+    };
+
+    private final String description;
+
+    private RandomSource(String p_description) {
+        this.description = p_description;
+    }
+
+    /**
+     * Create a new, independently seeded random number generator of this engine type
+     *
+     * @param p_seed seed for the new generator
+     * @return new random number generator
+     */
+    public abstract Random create(long p_seed);
+
+    /**
+     * @return human readable description (used for option help text)
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return engine names, in ordinal order, for use in a MultiChoiceOption
+     */
+    public static String[] names() {
+        String[] ret = new String[values().length];
+        for (RandomSource r : values()) {
+            ret[r.ordinal()] = r.name();
+        }
+        return ret;
+    }
+
+    /**
+     * @return engine descriptions, in ordinal order, for use in a MultiChoiceOption
+     */
+    public static String[] descriptions() {
+        String[] ret = new String[values().length];
+        for (RandomSource r : values()) {
+            ret[r.ordinal()] = r.getDescription();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ *    RankSelectBitSet.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.generators;
+
+import java.io.Serializable;
+
+/**
+ * RankSelectBitSet.java
+ *
+ * Fixed-size bit set over [0, size()) that can also find the k-th set (select1) or k-th clear (select0) bit, in
+ * ascending order. A population count per 512-bit block is kept up to date on every set/clear, so a select only scans
+ * the block counts and then at most eight words, instead of boxing and copying a whole TreeSet as toArray()[k] does.
+ * Since members are selected in ascending order, select1(k) returns exactly what TreeSet.toArray()[k] would have for
+ * the set bits (and select0(k) for the clear bits), so random draws pick the same members as before.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class RankSelectBitSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    protected static final int BLOCK_SHIFT = 9;                 // 512 bits = 8 words per block
+    protected static final int WORDS_PER_BLOCK = 1 << (BLOCK_SHIFT - 6);
+    protected final long[] words;
+    protected final int[] blockCounts;                           // set bits per block
+    protected final int size;
+    protected int cardinality = 0;
+
+    /**
+     * @param p_size number of bits (all initially clear)
+     */
+    public RankSelectBitSet(int p_size) {
+        this.size = p_size;
+        this.words = new long[(p_size + 63) >>> 6];
+        this.blockCounts = new int[(p_size + (1 << BLOCK_SHIFT) - 1) >>> BLOCK_SHIFT];
+    }
+
+    /**
+     * @return number of bits
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of set bits
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * @param p_index bit index
+     * @return true if the bit is set
+     */
+    public boolean get(int p_index) {
+        return (words[p_index >>> 6] & (1L << p_index)) != 0;
+    }
+
+    /**
+     * @param p_index bit to set
+     * @return true if the bit was clear before
+     */
+    public boolean set(int p_index) {
+        long mask = 1L << p_index;
+        int w = p_index >>> 6;
+        if ((words[w] & mask) != 0) {
+            return false;
+        }
+        words[w] |= mask;
+        ++blockCounts[p_index >>> BLOCK_SHIFT];
+        ++cardinality;
+        return true;
+    }
+
+    /**
+     * @param p_index bit to clear
+     * @return true if the bit was set before
+     */
+    public boolean clear(int p_index) {
+        long mask = 1L << p_index;
+        int w = p_index >>> 6;
+        if ((words[w] & mask) == 0) {
+            return false;
+        }
+        words[w] &= ~mask;
+        --blockCounts[p_index >>> BLOCK_SHIFT];
+        --cardinality;
+        return true;
+    }
+
+    /**
+     * Set every bit
+     */
+    public void setAll() {
+        for (int i = 0; i < size; ++i) {
+            set(i);
+        }
+    }
+
+    /**
+     * Clear every bit
+     */
+    public void clearAll() {
+        java.util.Arrays.fill(words, 0);
+        java.util.Arrays.fill(blockCounts, 0);
+        cardinality = 0;
+    }
+
+    /**
+     * @param p_k rank, 0 to cardinality() - 1
+     * @return index of the k-th (0-based, ascending) set bit
+     */
+    public int select1(int p_k) {
+        int k = p_k;
+        int block = 0;
+        while (k >= blockCounts[block]) {
+            k -= blockCounts[block++];
+        }
+        int w = block * WORDS_PER_BLOCK;
+        int c;
+        while (k >= (c = Long.bitCount(words[w]))) {
+            k -= c;
+            ++w;
+        }
+        return (w << 6) + selectInWord(words[w], k);
+    }
+
+    /**
+     * @param p_k rank, 0 to size() - cardinality() - 1
+     * @return index of the k-th (0-based, ascending) clear bit
+     */
+    public int select0(int p_k) {
+        int k = p_k;
+        int block = 0;
+        int zeros;
+        while (k >= (zeros = bitsInBlock(block) - blockCounts[block])) {
+            k -= zeros;
+            ++block;
+        }
+        int w = block * WORDS_PER_BLOCK;
+        while (k >= (zeros = bitsInWord(w) - Long.bitCount(words[w]))) {
+            k -= zeros;
+            ++w;
+        }
+        return (w << 6) + selectInWord(~words[w], k);
+    }
+
+    /**
+     * @param p_from first bit index to consider
+     * @return index of the first set bit at or after p_from, or -1 if there is none
+     */
+    public int nextSetBit(int p_from) {
+        int w = p_from >>> 6;
+        if (w >= words.length) {
+            return -1;
+        }
+        long word = words[w] & (-1L << p_from);
+        while (word == 0) {
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @return number of valid bits in a block (the last one may be partial)
+     */
+    protected int bitsInBlock(int p_block) {
+        return Math.min(1 << BLOCK_SHIFT, size - (p_block << BLOCK_SHIFT));
+    }
+
+    /**
+     * @return number of valid bits in a word (the last one may be partial)
+     */
+    protected int bitsInWord(int p_word) {
+        return Math.min(64, size - (p_word << 6));
+    }
+
+    /**
+     * @return position of the k-th set bit of a word
+     */
+    protected static int selectInWord(long p_word, int p_k) {
+        long word = p_word;
+        for (int i = 0; i < p_k; ++i) {
+            word &= word - 1;
+        }
+        return Long.numberOfTrailingZeros(word);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *    SortedIndexSet.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.generators;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * SortedIndexSet.java
+ *
+ * Primitive set of non-negative integer indices (concept IDs, feature indices, etc.) kept in ascending order in a dense
+ * array. Selecting the k-th member is O(1) and allocation free, which is the hot path for the generators. Membership
+ * changes are a binary search plus an array shift, and are only expected on (rare) drift events.
+ *
+ * Keeping the members in ascending order means get(k) returns exactly the element a TreeSet.toArray()[k] would have,
+ * so swapping this in for a TreeSet does not change which member a given random draw selects.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class SortedIndexSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    protected int[] members;
+    protected int size = 0;
+
+    /**
+     * Construct an empty set
+     * @param p_capacity initial number of members to reserve space for
+     */
+    public SortedIndexSet(int p_capacity) {
+        this.members = new int[Math.max(1, p_capacity)];
+    }
+
+    /**
+     * @return number of members in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the set has no members
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Select the k-th smallest member
+     * @param k rank of the member (0 to size() - 1)
+     * @return member value
+     */
+    public int get(int k) {
+        return members[k];
+    }
+
+    /**
+     * @param p_value index to look for
+     * @return true if p_value is a member of this set
+     */
+    public boolean contains(int p_value) {
+        return Arrays.binarySearch(members, 0, size, p_value) >= 0;
+    }
+
+    /**
+     * Add a member, keeping members in ascending order
+     * @param p_value index to add
+     * @return true if the set changed
+     */
+    public boolean add(int p_value) {
+        int pos = Arrays.binarySearch(members, 0, size, p_value);
+        if (pos >= 0) {
+            return false;
+        }
+        pos = -(pos + 1);
+        if (size == members.length) {
+            members = Arrays.copyOf(members, members.length * 2);
+        }
+        System.arraycopy(members, pos, members, pos + 1, size - pos);
+        members[pos] = p_value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Remove a member
+     * @param p_value index to remove
+     * @return true if the set changed
+     */
+    public boolean remove(int p_value) {
+        int pos = Arrays.binarySearch(members, 0, size, p_value);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(members, pos + 1, members, pos, size - pos - 1);
+        size--;
+        return true;
+    }
+
+    /**
+     * Remove all members (capacity is retained)
+     */
+    public void clear() {
+        size = 0;
+    }
+}
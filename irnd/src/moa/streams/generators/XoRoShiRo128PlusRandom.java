@@ -0,0 +1,199 @@
+/*
+ *    XoRoShiRo128PlusRandom.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.generators;
+
+import java.util.Random;
+
+/**
+ * XoRoShiRo128PlusRandom.java
+ *
+ * Fast, non-thread-safe drop-in replacement for java.util.Random. Uniform values come from the xoroshiro128+ generator
+ * (Blackman and Vigna, 2018) instead of the CAS-guarded LCG of java.util.Random, and Gaussian values come from the
+ * Marsaglia and Tsang (2000) 128-layer ziggurat instead of the synchronized polar method. Each instance must only be used
+ * by one thread at a time, which is how the generators use it (one shared RNG, or one RNG per substream).
+ *
+ * The sequence produced is NOT the same as java.util.Random for the same seed.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class XoRoShiRo128PlusRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    // Ziggurat tables (Marsaglia and Tsang, "The Ziggurat Method for Generating Random Variables", 2000)
+    private static final int ZIGGURAT_LAYERS = 128;
+    private static final double ZIGGURAT_R = 3.442619855899;
+    private static final long[] kn = new long[ZIGGURAT_LAYERS];
+    private static final double[] wn = new double[ZIGGURAT_LAYERS];
+    private static final double[] fn = new double[ZIGGURAT_LAYERS];
+
+    static {
+        final double m1 = 2147483648.0;
+        final double vn = 9.91256303526217e-3;
+        double dn = ZIGGURAT_R;
+        double tn = dn;
+        double q = vn / Math.exp(-0.5 * dn * dn);
+        kn[0] = (long) ((dn / q) * m1);
+        kn[1] = 0;
+        wn[0] = q / m1;
+        wn[ZIGGURAT_LAYERS - 1] = dn / m1;
+        fn[0] = 1.0;
+        fn[ZIGGURAT_LAYERS - 1] = Math.exp(-0.5 * dn * dn);
+        for (int i = ZIGGURAT_LAYERS - 2; i >= 1; --i) {
+            dn = Math.sqrt(-2.0 * Math.log(vn / dn + Math.exp(-0.5 * dn * dn)));
+            kn[i + 1] = (long) ((dn / tn) * m1);
+            tn = dn;
+            fn[i] = Math.exp(-0.5 * dn * dn);
+            wn[i] = dn / m1;
+        }
+    }
+
+    // Generator state. Note: no field initializers, since Random's constructor calls setSeed() before they would run.
+    private long s0;
+    private long s1;
+
+    /**
+     * @param p_seed initial seed
+     */
+    public XoRoShiRo128PlusRandom(long p_seed) {
+        super(p_seed);
+    }
+
+    /**
+     * Seeds both state words from the seed via SplitMix64, as recommended by the xoroshiro authors
+     *
+     * @param p_seed new seed
+     */
+    @Override
+    public void setSeed(long p_seed) {
+        long z = p_seed;
+        z += 0x9E3779B97F4A7C15L;
+        s0 = mix64(z);
+        z += 0x9E3779B97F4A7C15L;
+        s1 = mix64(z);
+        if ((s0 | s1) == 0) {
+            s1 = 1; // all-zero state is the one invalid state
+        }
+    }
+
+    @Override
+    public long nextLong() {
+        final long a = s0;
+        long b = s1;
+        final long ret = a + b;
+        b ^= a;
+        s0 = Long.rotateLeft(a, 24) ^ b ^ (b << 16);
+        s1 = Long.rotateLeft(b, 37);
+        return ret;
+    }
+
+    @Override
+    protected int next(int p_bits) {
+        // The upper bits of xoroshiro128+ are the strongest ones
+        return (int) (nextLong() >>> (64 - p_bits));
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * Unbiased bounded integer using Lemire's multiply-and-reject method (no division on the common path)
+     *
+     * @param p_bound upper bound (exclusive), must be positive
+     * @return uniform value in [0, p_bound)
+     */
+    @Override
+    public int nextInt(int p_bound) {
+        if (p_bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        long m = (nextLong() >>> 32) * p_bound;
+        long l = m & 0xFFFFFFFFL;
+        if (l < p_bound) {
+            long t = (0x100000000L - p_bound) % p_bound;
+            while (l < t) {
+                m = (nextLong() >>> 32) * p_bound;
+                l = m & 0xFFFFFFFFL;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Standard normal sample via the ziggurat. The layer index and the 32-bit abscissa are taken from disjoint bits
+     * of one 64-bit draw, which avoids the layer/value correlation of the original 32-bit formulation.
+     *
+     * @return N(0,1) distributed value
+     */
+    @Override
+    public double nextGaussian() {
+        long r = nextLong();
+        int iz = (int) (r & (ZIGGURAT_LAYERS - 1));
+        int hz = (int) (r >> 32);
+        if (Math.abs((long) hz) < kn[iz]) {
+            return hz * wn[iz];
+        }
+        return gaussianTail(hz, iz);
+    }
+
+    /**
+     * Slow path of the ziggurat: base strip tail or wedge rejection
+     */
+    private double gaussianTail(int p_hz, int p_iz) {
+        int hz = p_hz;
+        int iz = p_iz;
+        for (;;) {
+            double x = hz * wn[iz];
+            if (iz == 0) {
+                double y;
+                do {
+                    x = -Math.log(1.0 - nextDouble()) / ZIGGURAT_R;
+                    y = -Math.log(1.0 - nextDouble());
+                } while (y + y < x * x);
+                return (hz > 0) ? ZIGGURAT_R + x : -ZIGGURAT_R - x;
+            }
+            if (fn[iz] + nextDouble() * (fn[iz - 1] - fn[iz]) < Math.exp(-0.5 * x * x)) {
+                return x;
+            }
+            long r = nextLong();
+            iz = (int) (r & (ZIGGURAT_LAYERS - 1));
+            hz = (int) (r >> 32);
+            if (Math.abs((long) hz) < kn[iz]) {
+                return hz * wn[iz];
+            }
+        }
+    }
+
+    private static long mix64(long p_z) {
+        long z = p_z;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
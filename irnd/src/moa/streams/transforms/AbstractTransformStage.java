@@ -0,0 +1,77 @@
+/*
+ *    AbstractTransformStage.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.transforms;
+
+import java.util.Arrays;
+import java.util.Random;
+import moa.core.InstancesHeader;
+import moa.core.ObjectRepository;
+import moa.options.AbstractOptionHandler;
+import moa.tasks.TaskMonitor;
+
+/**
+ * AbstractTransformStage.java
+ *
+ * Common part of the transform stages: the attribute indices a stage works on, resolved once in prepare() so apply()
+ * is a plain loop over a primitive array.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public abstract class AbstractTransformStage extends AbstractOptionHandler implements InstanceTransformStage {
+
+    private static final long serialVersionUID = 1L;
+    protected int classIndex = -1;
+    protected int numClasses = 0;
+    protected int[] features = new int[0];        // every attribute except the class
+    protected int[] numericFeatures = new int[0]; // numeric attributes except the class
+
+    @Override
+    public void prepare(InstancesHeader p_header, Random p_rng) {
+        this.classIndex = p_header.classIndex();
+        this.numClasses = p_header.numClasses();
+        int numAttributes = p_header.numAttributes();
+        int numFeatures = 0;
+        int numNumeric = 0;
+        this.features = new int[numAttributes];
+        this.numericFeatures = new int[numAttributes];
+        for (int i = 0; i < numAttributes; ++i) {
+            if (i == this.classIndex) {
+                continue;
+            }
+            this.features[numFeatures++] = i;
+            if (p_header.attribute(i).isNumeric()) {
+                this.numericFeatures[numNumeric++] = i;
+            }
+        }
+        this.features = Arrays.copyOf(this.features, numFeatures);
+        this.numericFeatures = Arrays.copyOf(this.numericFeatures, numNumeric);
+    }
+
+    @Override
+    protected void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
+        // Nothing to do until the stage is bound to a header
+    }
+
+    @Override
+    public void getDescription(StringBuilder sb, int indent) {
+    }
+}
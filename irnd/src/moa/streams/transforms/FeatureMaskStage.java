@@ -0,0 +1,73 @@
+/*
+ *    FeatureMaskStage.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.transforms;
+
+import java.util.Arrays;
+import java.util.Random;
+import moa.core.InstancesHeader;
+import moa.options.FloatOption;
+
+/**
+ * FeatureMaskStage.java
+ *
+ * Zeroes a fixed, randomly chosen subset of the attributes (e.g. to emulate sensors that are switched off). The subset
+ * is drawn once, when the stage is bound to its stream.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class FeatureMaskStage extends AbstractTransformStage {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getPurposeString() {
+        return "Sets a fixed random subset of the attributes to zero.";
+    }
+
+    public FloatOption maskFractionOption = new FloatOption("maskFraction", 'f',
+            "Fraction of the attributes (excluding the class) to mask", 0.1, 0.0, 1.0);
+
+    protected int[] masked = new int[0];
+
+    @Override
+    public void prepare(InstancesHeader p_header, Random p_rng) {
+        super.prepare(p_header, p_rng);
+        // Partial Fisher-Yates shuffle of the features: the first numMasked are the masked ones
+        int[] order = features.clone();
+        int numMasked = (int) Math.round(order.length * this.maskFractionOption.getValue());
+        for (int i = 0; i < numMasked; ++i) {
+            int j = i + p_rng.nextInt(order.length - i);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        this.masked = Arrays.copyOf(order, numMasked);
+        Arrays.sort(this.masked);
+    }
+
+    @Override
+    public void apply(double[] p_values, Random p_rng) {
+        for (int i : masked) {
+            p_values[i] = 0;
+        }
+    }
+}
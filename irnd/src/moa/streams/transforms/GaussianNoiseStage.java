@@ -0,0 +1,62 @@
+/*
+ *    GaussianNoiseStage.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.transforms;
+
+import java.util.Random;
+import moa.options.FlagOption;
+import moa.options.FloatOption;
+
+/**
+ * GaussianNoiseStage.java
+ *
+ * Adds zero-mean Gaussian noise to every numeric attribute.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class GaussianNoiseStage extends AbstractTransformStage {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getPurposeString() {
+        return "Adds Gaussian noise to the numeric attributes.";
+    }
+
+    public FloatOption noiseOption = new FloatOption("noise", 'n',
+            "Standard deviation of the noise", 0.05, 0.0, Double.MAX_VALUE);
+
+    public FlagOption clipOption = new FlagOption("clip", 'c',
+            "Clip noisy values to [0, 1], the range of the IRND numeric attributes");
+
+    @Override
+    public void apply(double[] p_values, Random p_rng) {
+        final double noise = this.noiseOption.getValue();
+        final boolean clip = this.clipOption.isSet();
+        for (int i : numericFeatures) {
+            double v = p_values[i] + p_rng.nextGaussian() * noise;
+            if (clip) {
+                v = (v < 0) ? 0 : ((v > 1) ? 1 : v);
+            }
+            p_values[i] = v;
+        }
+    }
+}
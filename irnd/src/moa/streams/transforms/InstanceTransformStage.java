@@ -0,0 +1,53 @@
+/*
+ *    InstanceTransformStage.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.transforms;
+
+import java.util.Random;
+import moa.core.InstancesHeader;
+import moa.options.OptionHandler;
+
+/**
+ * InstanceTransformStage.java
+ *
+ * One stage of a TransformedInstanceStream. A stage rewrites the values of an instance in place, in the value buffer
+ * all stages of the pipeline share, so stacking stages costs no copies. Stages must not keep a reference to the buffer.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public interface InstanceTransformStage extends OptionHandler {
+
+    /**
+     * Bind the stage to the header of the stream it transforms, before the first apply()
+     *
+     * @param p_header header of the stream (the class index is set)
+     * @param p_rng random number generator of the pipeline, for any setup draws
+     */
+    public void prepare(InstancesHeader p_header, Random p_rng);
+
+    /**
+     * Transform one instance in place
+     *
+     * @param p_values value buffer of the instance, one value per attribute (including the class)
+     * @param p_rng random number generator of the pipeline
+     */
+    public void apply(double[] p_values, Random p_rng);
+}
@@ -0,0 +1,57 @@
+/*
+ *    LabelFlipStage.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.transforms;
+
+import java.util.Random;
+import moa.options.FloatOption;
+import weka.core.Utils;
+
+/**
+ * LabelFlipStage.java
+ *
+ * Label noise: with a given probability the class is replaced by a different class, chosen uniformly.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class LabelFlipStage extends AbstractTransformStage {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getPurposeString() {
+        return "Replaces the class label by a different one at random.";
+    }
+
+    public FloatOption flipProbabilityOption = new FloatOption("flipProbability", 'p',
+            "Probability that the label of an instance is changed", 0.05, 0.0, 1.0);
+
+    @Override
+    public void apply(double[] p_values, Random p_rng) {
+        if (numClasses < 2 || Utils.isMissingValue(p_values[classIndex])
+                || p_rng.nextDouble() >= this.flipProbabilityOption.getValue()) {
+            return;
+        }
+        int y = (int) p_values[classIndex];
+        int flipped = p_rng.nextInt(numClasses - 1);
+        p_values[classIndex] = (flipped >= y) ? flipped + 1 : flipped;
+    }
+}
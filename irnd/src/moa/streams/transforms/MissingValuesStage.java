@@ -0,0 +1,73 @@
+/*
+ *    MissingValuesStage.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.transforms;
+
+import java.util.Random;
+import moa.options.FloatOption;
+import weka.core.Utils;
+
+/**
+ * MissingValuesStage.java
+ *
+ * Replaces each attribute value (except the class) by a missing value with a given probability. Gaps between missing
+ * values are drawn directly (geometric skips), so the cost is one random draw per missing value rather than one per
+ * attribute.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class MissingValuesStage extends AbstractTransformStage {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getPurposeString() {
+        return "Replaces attribute values by missing values at random.";
+    }
+
+    public FloatOption missingProbabilityOption = new FloatOption("missingProbability", 'p',
+            "Probability that an attribute value is missing", 0.05, 0.0, 1.0);
+
+    @Override
+    public void apply(double[] p_values, Random p_rng) {
+        double p = this.missingProbabilityOption.getValue();
+        if (p <= 0) {
+            return;
+        }
+        double logQ = Math.log(1.0 - p);
+        for (int k = skip(p_rng, logQ); k < features.length; k += 1 + skip(p_rng, logQ)) {
+            p_values[features[k]] = Utils.missingValue();
+        }
+    }
+
+    /**
+     * @param p_rng random number generator
+     * @param p_logQ log(1 - missing probability)
+     * @return number of values kept before the next missing one (geometric, support 0, 1, ...)
+     */
+    protected static int skip(Random p_rng, double p_logQ) {
+        if (p_logQ == Double.NEGATIVE_INFINITY) {
+            return 0;
+        }
+        double s = Math.floor(Math.log(1.0 - p_rng.nextDouble()) / p_logQ);
+        return (s >= Integer.MAX_VALUE / 2) ? Integer.MAX_VALUE / 2 : (int) s;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *    ScalingStage.java
+ *    Copyright (C) 2013 Brandon S. Parker
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package moa.streams.transforms;
+
+import java.util.Random;
+import moa.options.FloatOption;
+
+/**
+ * ScalingStage.java
+ *
+ * Affine transformation scale * v + offset of every numeric attribute (e.g. to emulate a change of units).
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class ScalingStage extends AbstractTransformStage {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getPurposeString() {
+        return "Scales and shifts the numeric attributes.";
+    }
+
+    public FloatOption scaleOption = new FloatOption("scale", 'a',
+            "Factor every numeric attribute is multiplied by", 1.0, -Double.MAX_VALUE, Double.MAX_VALUE);
+
+    public FloatOption offsetOption = new FloatOption("offset", 'b',
+            "Value added to every numeric attribute after scaling", 0.0, -Double.MAX_VALUE, Double.MAX_VALUE);
+
+    @Override
+    public void apply(double[] p_values, Random p_rng) {
+        final double scale = this.scaleOption.getValue();
+        final double offset = this.offsetOption.getValue();
+        for (int i : numericFeatures) {
+            p_values[i] = p_values[i] * scale + offset;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ *    BenchmarkGeneratorThroughput.java
+ *
+ *    Copyright (C) 2013 University of Texas at Dallas
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Random;
+import moa.core.ObjectRepository;
+import moa.options.FlagOption;
+import moa.options.IntOption;
+import moa.options.MultiChoiceOption;
+import moa.options.StringOption;
+import moa.streams.InstancePool;
+import moa.streams.generators.DriftingExemplarAttribute;
+import moa.streams.generators.DriftingExemplarInstance;
+import moa.streams.generators.InducedRandomNonStationaryDataGenerator;
+import weka.core.Instance;
+
+/**
+ * Micro-benchmark of the IRND generator over a sweep of its parameters, to tell whether a change to the generator makes
+ * it faster. Three code paths are measured, for every combination of the swept parameters:
+ * <ul>
+ * <li>Generator: InducedRandomNonStationaryDataGenerator.nextInstance() (one operation = one instance)</li>
+ * <li>Exemplar: DriftingExemplarInstance.step() of one concept (one operation = one sample of all attributes)</li>
+ * <li>Attribute: DriftingExemplarAttribute.generateNextValue() (one operation = one value)</li>
+ * </ul>
+ * Each benchmark runs timed warmup iterations, so the JIT compiles the hot paths, followed by timed measurement
+ * iterations. Every iteration runs batches of operations until its time is up, and results are fed into a checksum so
+ * the JIT cannot eliminate them. The report gives the mean and standard deviation of operations per second over the
+ * measurement iterations, and the heap bytes allocated per operation on the benchmark thread (from
+ * com.sun.management.ThreadMXBean, where the JVM supports it).
+ *
+ * Benchmarks run in the task's JVM one after the other, so results are most comparable between runs on an otherwise
+ * idle machine with a fixed heap size.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class BenchmarkGeneratorThroughput extends MainTask {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getPurposeString() {
+        return "Measures IRND generator throughput and allocation over a sweep of generator parameters.";
+    }
+
+    public MultiChoiceOption benchmarkOption = new MultiChoiceOption("benchmark", 'B',
+                                                                     "Code path(s) to measure",
+                                                                     new String[]{"All", "Generator", "Exemplar", "Attribute"},
+                                                                     new String[]{"All three benchmarks",
+                                                                                  "InducedRandomNonStationaryDataGenerator.nextInstance()",
+                                                                                  "DriftingExemplarInstance.step()",
+                                                                                  "DriftingExemplarAttribute.generateNextValue()"}, 0);
+
+    public StringOption numNumericAttributesOption = new StringOption("numNumericAttributes", 'n',
+                                                                      "Comma separated numbers of numeric attributes to sweep", "10,100");
+
+    public StringOption numNominalAttributesOption = new StringOption("numNominalAttributes", 'o',
+                                                                      "Comma separated numbers of nominal attributes to sweep", "0,10");
+
+    public StringOption numClassesOption = new StringOption("numClasses", 'C',
+                                                            "Comma separated numbers of classes to sweep", "2,20");
+
+    public StringOption maxCentroidsPerClassOption = new StringOption("maxCentroidsPerClass", 'k',
+                                                                      "Comma separated GMM sizes to sweep", "1,5");
+
+    public StringOption velocityShiftProbabilityOption = new StringOption("attributeVelocityShiftProbability", 'r',
+                                                                          "Comma separated velocity shift probabilities (percent) to sweep", "0,1");
+
+    public StringOption attributeActivationProbabilityOption = new StringOption("attributeActivationProbability", 'e',
+                                                                                "Comma separated attribute activation probabilities (percent) to sweep", "0,1");
+
+    public StringOption generatorOptionsOption = new StringOption("generatorOptions", 'g',
+                                                                  "Further generator options used in every configuration (e.g. -f -u 64)", "");
+
+    public IntOption warmupIterationsOption = new IntOption("warmupIterations", 'w',
+                                                            "Timed iterations run (and discarded) before measuring", 3, 0, Integer.MAX_VALUE);
+
+    public IntOption measurementIterationsOption = new IntOption("measurementIterations", 'm',
+                                                                 "Timed iterations measured", 5, 1, Integer.MAX_VALUE);
+
+    public IntOption iterationMillisOption = new IntOption("iterationMillis", 'i',
+                                                           "Duration of each iteration in milliseconds", 1000, 1, Integer.MAX_VALUE);
+
+    public FlagOption csvOption = new FlagOption("csv", 'c',
+                                                 "Report as comma separated values instead of an aligned table");
+
+    protected static final int BATCH_SIZE = 1024;
+
+    /**
+     * One code path under test: runs a batch of operations and returns a checksum of their results
+     */
+    protected interface Operation {
+
+        /**
+         * @param p_count number of operations to run
+         * @return checksum of the results
+         */
+        double run(int p_count);
+    }
+
+    protected final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    protected volatile double sink = 0; // keeps the checksums (and so the measured work) alive
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return String.class;
+    }
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+        int[] numNumeric = parseInts(this.numNumericAttributesOption.getValue());
+        int[] numNominal = parseInts(this.numNominalAttributesOption.getValue());
+        int[] numClasses = parseInts(this.numClassesOption.getValue());
+        int[] gmmSizes = parseInts(this.maxCentroidsPerClassOption.getValue());
+        double[] shiftProbabilities = parseDoubles(this.velocityShiftProbabilityOption.getValue());
+        double[] activationProbabilities = parseDoubles(this.attributeActivationProbabilityOption.getValue());
+        int benchmark = this.benchmarkOption.getChosenIndex();
+        int numConfigurations = numNumeric.length * numNominal.length * numClasses.length * gmmSizes.length
+                * shiftProbabilities.length * activationProbabilities.length;
+        boolean csv = this.csvOption.isSet();
+        StringBuilder sb = new StringBuilder();
+        sb.append(csv ? "benchmark,numeric,nominal,classes,centroids,shift%,activation%,ops/s,ops/s stddev,bytes/op\n"
+                      : String.format("%-9s %7s %7s %7s %9s %7s %11s %14s %12s %10s\n", "benchmark", "numeric", "nominal",
+                                      "classes", "centroids", "shift%", "activation%", "ops/s", "stddev", "bytes/op"));
+        int done = 0;
+        for (int n : numNumeric) {
+            for (int o : numNominal) {
+                for (int c : numClasses) {
+                    for (int k : gmmSizes) {
+                        for (double r : shiftProbabilities) {
+                            for (double e : activationProbabilities) {
+                                if (monitor.taskShouldAbort()) {
+                                    return null;
+                                }
+                                monitor.setCurrentActivity(String.format("Benchmarking configuration %d of %d...", done + 1, numConfigurations),
+                                                           (double) done / numConfigurations);
+                                String options = String.format("-n %d -o %d -C %d -k %d -r %s -e %s %s", n, o, c, k,
+                                                               Double.toString(r), Double.toString(e), this.generatorOptionsOption.getValue());
+                                InducedRandomNonStationaryDataGenerator generator = newGenerator(options);
+                                String config = csv ? String.format("%d,%d,%d,%d,%s,%s", n, o, c, k, Double.toString(r), Double.toString(e))
+                                                    : String.format("%7d %7d %7d %9d %7s %11s", n, o, c, k, Double.toString(r), Double.toString(e));
+                                if (benchmark == 0 || benchmark == 1) {
+                                    report(sb, "Generator", config, measure(generatorOperation(generator)));
+                                }
+                                if (benchmark == 0 || benchmark == 2) {
+                                    report(sb, "Exemplar", config, measure(exemplarOperation(newGenerator(options))));
+                                }
+                                if (benchmark == 0 || benchmark == 3) {
+                                    report(sb, "Attribute", config, measure(attributeOperation(generator, n, o, k, r / 100.0)));
+                                }
+                                ++done;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param p_options generator CLI options
+     * @return prepared generator
+     */
+    protected static InducedRandomNonStationaryDataGenerator newGenerator(String p_options) {
+        InducedRandomNonStationaryDataGenerator ret = new InducedRandomNonStationaryDataGenerator();
+        try {
+            ret.getOptions().setViaCLIString(p_options);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid generator options: " + p_options, e);
+        }
+        ret.prepareForUse();
+        return ret;
+    }
+
+    /**
+     * @param p_generator prepared generator
+     * @return nextInstance(), returning each instance to the generator's pool if it has one
+     */
+    protected static Operation generatorOperation(final InducedRandomNonStationaryDataGenerator p_generator) {
+        final InstancePool pool = p_generator.getInstancePool();
+        return (int p_count) -> {
+            double ret = 0;
+            for (int i = 0; i < p_count; ++i) {
+                Instance inst = p_generator.nextInstance();
+                ret += inst.classValue();
+                if (pool != null) {
+                    pool.offer(inst);
+                }
+            }
+            return ret;
+        };
+    }
+
+    /**
+     * @param p_generator prepared generator, not used for anything else
+     * @return step() of the first concept of the generator
+     */
+    protected static Operation exemplarOperation(InducedRandomNonStationaryDataGenerator p_generator) {
+        final DriftingExemplarInstance concept = p_generator.getConcept(0);
+        if (concept == null) {
+            throw new IllegalArgumentException("The exemplar benchmark needs eagerly built concepts (no -l)");
+        }
+        final int numValues = concept.numValues() - 1;
+        return (int p_count) -> {
+            double ret = 0;
+            for (int i = 0; i < p_count; ++i) {
+                concept.step();
+                ret += concept.valueSparse(i % numValues);
+            }
+            return ret;
+        };
+    }
+
+    /**
+     * Build stand-alone attributes configured as the generator configures those of its concepts
+     *
+     * @param p_generator prepared generator (for the velocity and noise options)
+     * @param p_numNumeric number of numeric attributes
+     * @param p_numNominal number of nominal attributes
+     * @param p_gmmSize maximum GMM size
+     * @param p_probVelShift velocity shift probability
+     * @return generateNextValue() of each attribute in turn
+     */
+    protected static Operation attributeOperation(InducedRandomNonStationaryDataGenerator p_generator, int p_numNumeric,
+                                                  int p_numNominal, int p_gmmSize, double p_probVelShift) {
+        Random rng = new Random(p_generator.modelRandomSeedOption.getValue());
+        ArrayList<String> corpus = new ArrayList<>(100);
+        for (int i = 0; i < 100; ++i) {
+            corpus.add("w" + i);
+        }
+        double maxVelocity = p_generator.attributeVelocityOption.getValue() / 100.0;
+        final DriftingExemplarAttribute[] attributes = new DriftingExemplarAttribute[Math.max(1, p_numNumeric + p_numNominal)];
+        for (int j = 0; j < attributes.length; ++j) {
+            DriftingExemplarAttribute a = (j < p_numNumeric || p_numNumeric + p_numNominal == 0)
+                    ? new DriftingExemplarAttribute("Attr_" + j + "_Num", j, rng)
+                    : new DriftingExemplarAttribute("Attr_" + j + "_Nom", j, rng, corpus);
+            a.setGMM(rng.nextInt(p_gmmSize) + 1, maxVelocity - (rng.nextDouble() * 0.66 * maxVelocity));
+            a.setProbabilityOfVelocityShift(p_probVelShift);
+            a.setVariance(p_generator.attributeNoiseOption.getValue() / 100.0);
+            attributes[j] = a;
+        }
+        return (int p_count) -> {
+            double ret = 0;
+            for (int i = 0; i < p_count; ++i) {
+                ret += attributes[i % attributes.length].generateNextValue();
+            }
+            return ret;
+        };
+    }
+
+    /**
+     * Run the warmup and measurement iterations of one benchmark
+     *
+     * @param p_operation code path to measure
+     * @return {mean ops/s, stddev of ops/s, bytes allocated per operation (NaN if unknown)}
+     */
+    protected double[] measure(Operation p_operation) {
+        for (int i = 0; i < this.warmupIterationsOption.getValue(); ++i) {
+            iterate(p_operation, null);
+        }
+        int numIterations = this.measurementIterationsOption.getValue();
+        double sum = 0;
+        double sumSquares = 0;
+        long totalOps = 0;
+        long totalBytes = 0;
+        long[] counters = new long[2];
+        for (int i = 0; i < numIterations; ++i) {
+            double rate = iterate(p_operation, counters);
+            sum += rate;
+            sumSquares += rate * rate;
+            totalOps += counters[0];
+            totalBytes += counters[1];
+        }
+        double mean = sum / numIterations;
+        double stddev = Math.sqrt(Math.max(0, sumSquares / numIterations - mean * mean));
+        return new double[]{mean, stddev, (totalBytes >= 0 && totalOps > 0) ? (double) totalBytes / totalOps : Double.NaN};
+    }
+
+    /**
+     * @param p_operation code path to measure
+     * @param p_counters if not null, receives {operations run, bytes allocated (negative if unknown)}
+     * @return operations per second
+     */
+    protected double iterate(Operation p_operation, long[] p_counters) {
+        long duration = this.iterationMillisOption.getValue() * 1000000L;
+        long ops = 0;
+        double checksum = 0;
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            checksum += p_operation.run(BATCH_SIZE);
+            ops += BATCH_SIZE;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < duration);
+        long bytesAfter = allocatedBytes();
+        this.sink += checksum;
+        if (p_counters != null) {
+            p_counters[0] = ops;
+            p_counters[1] = (bytesBefore < 0 || bytesAfter < 0) ? -1 : bytesAfter - bytesBefore;
+        }
+        return ops * 1e9 / elapsed;
+    }
+
+    /**
+     * @return heap bytes allocated so far by the current thread, or -1 if the JVM does not tell
+     */
+    protected long allocatedBytes() {
+        if (this.threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) this.threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * @param p_sb report
+     * @param p_benchmark benchmark name
+     * @param p_config formatted configuration columns
+     * @param p_result result of measure()
+     */
+    protected void report(StringBuilder p_sb, String p_benchmark, String p_config, double[] p_result) {
+        if (this.csvOption.isSet()) {
+            p_sb.append(String.format("%s,%s,%.1f,%.1f,%.1f\n", p_benchmark, p_config, p_result[0], p_result[1], p_result[2]));
+        } else {
+            p_sb.append(String.format("%-9s %s %14.0f %12.0f %10.1f\n", p_benchmark, p_config, p_result[0], p_result[1], p_result[2]));
+        }
+    }
+
+    /**
+     * @param p_list comma separated integers
+     * @return parsed values
+     */
+    protected static int[] parseInts(String p_list) {
+        String[] parts = p_list.split(",");
+        int[] ret = new int[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            ret[i] = Integer.parseInt(parts[i].trim());
+        }
+        return ret;
+    }
+
+    /**
+     * @param p_list comma separated numbers
+     * @return parsed values
+     */
+    protected static double[] parseDoubles(String p_list) {
+        String[] parts = p_list.split(",");
+        double[] ret = new double[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            ret[i] = Double.parseDouble(parts[i].trim());
+        }
+        return ret;
+    }
+}
@@ -25,12 +25,12 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.Random;
 import java.util.Set;
 import moa.classifiers.Classifier;
@@ -39,15 +39,27 @@ import moa.core.Measurement;
 import moa.core.MultiClassConfusionMatrix;
 import moa.core.ObjectRepository;
 import moa.core.TimingUtils;
+import moa.evaluation.ArrivalProcess;
 import moa.evaluation.ClassificationPerformanceEvaluator;
+import moa.evaluation.DelayedInstanceWheel;
+import moa.evaluation.LabelDelayDistribution;
 import moa.evaluation.LearningCurve;
 import moa.evaluation.LearningEvaluation;
+import moa.evaluation.OpenLoopQueueModel;
+import moa.evaluation.PackedInstanceStore;
 import moa.options.ClassOption;
 import moa.options.FileOption;
 import moa.options.FlagOption;
 import moa.options.FloatOption;
 import moa.options.IntOption;
+import moa.options.MultiChoiceOption;
+import moa.options.StringOption;
+import moa.streams.BatchInstanceStream;
+import moa.streams.ColumnarInstanceBatch;
+import moa.streams.InstancePool;
 import moa.streams.InstanceStream;
+import moa.streams.InstrumentedInstanceStream;
+import moa.streams.RecyclingInstanceStream;
 import weka.core.Instance;
 import weka.core.Instances;
 
@@ -123,6 +135,58 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
                                                              "Time Delay (latency) for using a labeled instance for training purposes",
                                                              2000, 0, Integer.MAX_VALUE);
 
+    /**
+     * Distribution of the per-instance training delay
+     */
+    public MultiChoiceOption trainingDelayDistributionOption = new MultiChoiceOption("trainingDelayDistribution", 'D',
+            "Distribution of the latency of each training label",
+            new String[]{"Fixed", "Exponential", "Pareto", "PerClass"},
+            new String[]{"Every label arrives after trainingDelay instances",
+                "Exponentially distributed latency with mean trainingDelay",
+                "Heavy-tailed (Lomax) latency with mean trainingDelay and tail index trainingDelayTailIndex",
+                "Fixed latency per class, from classTrainingDelays"}, 0);
+
+    /**
+     * Tail index of Pareto training delays
+     */
+    public FloatOption trainingDelayTailIndexOption = new FloatOption("trainingDelayTailIndex", 'x',
+            "Tail index of Pareto training delays (smaller is heavier; at most 1 means an infinite mean, and without maxTrainingDelay some labels then never arrive)",
+            2.0, 0.5, Double.MAX_VALUE);
+
+    /**
+     * Per-class training delays
+     */
+    public StringOption classTrainingDelaysOption = new StringOption("classTrainingDelays", 'k',
+            "Comma separated training delay of each class, in class index order (PerClass; other classes use trainingDelay)", "");
+
+    /**
+     * Cap on random training delays
+     */
+    public IntOption maxTrainingDelayOption = new IntOption("maxTrainingDelay", 'X',
+            "Longest training delay drawn (-1 = no limit)", -1, -1, Integer.MAX_VALUE);
+
+    /**
+     * Where instances waiting for their training label are kept
+     */
+    public MultiChoiceOption trainingQueueStorageOption = new MultiChoiceOption("trainingQueueStorage", 'H',
+            "Storage of the instances waiting for their training label",
+            new String[]{"Heap", "Packed"},
+            new String[]{"Instance objects on the Java heap",
+                "Packed primitive rows outside the Java heap, restored when their label arrives (for very long delays)"}, 0);
+
+    /**
+     * Direct memory for packed training queue rows
+     */
+    public IntOption trainingQueueMemoryOption = new IntOption("trainingQueueMemory", 'M',
+            "Megabytes of direct memory for packed training queue rows before spilling to trainingQueueSpillFile", 1024, 1, Integer.MAX_VALUE);
+
+    /**
+     * Spill file for packed training queue rows
+     */
+    public FileOption trainingQueueSpillFileOption = new FileOption("trainingQueueSpillFile", 'F',
+            "Memory-mapped file for packed training queue rows beyond trainingQueueMemory (none = keep using direct memory)",
+            "", "bin", true);
+
     /**
      * Establishes delay between ingest of a data instance and when that instance is used for training
      *
@@ -189,6 +253,35 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
    
     
     
+    /**
+     * Open-loop load emulation: arrival process of the emulated real-time feed
+     */
+    public MultiChoiceOption arrivalProcessOption = new MultiChoiceOption("arrivalProcess", 'a',
+            "Emulated arrival process of a real-time feed, to measure queueing delay and backlog against the measured test and train times",
+            new String[]{"ClosedLoop", "Constant", "Poisson", "OnOff"},
+            new String[]{"No emulation: the next instance arrives when the learner is done with the previous one",
+                "Evenly spaced arrivals at arrivalRate",
+                "Poisson arrivals at arrivalRate",
+                "Bursty: Poisson arrivals during on periods, none during off periods, arrivalRate on average"}, 0);
+
+    /**
+     * Open-loop load emulation: average arrival rate
+     */
+    public FloatOption arrivalRateOption = new FloatOption("arrivalRate", 'R',
+            "Average arrival rate (instances per second) of the emulated feed", 20000.0, 0.001, Double.MAX_VALUE);
+
+    /**
+     * Open-loop load emulation: burst length
+     */
+    public FloatOption burstOnTimeOption = new FloatOption("burstOnTime", 'B',
+            "Mean length in seconds of the on periods of the OnOff arrival process", 0.1, 0.000001, Double.MAX_VALUE);
+
+    /**
+     * Open-loop load emulation: pause length
+     */
+    public FloatOption burstOffTimeOption = new FloatOption("burstOffTime", 'P',
+            "Mean length in seconds of the off periods of the OnOff arrival process", 0.1, 0.0, Double.MAX_VALUE);
+
     /**
      * The main classification algorithm under test
      */
@@ -199,6 +292,36 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
      */
     private InstanceStream stream = null;
 
+    /**
+     * Re-used columnar buffer for streams that can generate a whole chunk at once
+     */
+    private ColumnarInstanceBatch chunkBatch = null;
+
+    /**
+     * Pool of the stream to hand trained instances back to (null unless the stream recycles instances)
+     */
+    private InstancePool instancePool = null;
+
+    /**
+     * Training queue entry of each instance of the current chunk, to pin instances that await a final label
+     */
+    private int[] chunkEntries = new int[0];
+
+    /**
+     * Training label latency of each instance
+     */
+    private LabelDelayDistribution trainingDelays = null;
+
+    /**
+     * Packed rows of the instances waiting for their training label (null if they are kept on the heap)
+     */
+    private PackedInstanceStore trainingQueueStore = null;
+
+    /**
+     * Simulated queue between the emulated feed and the learner (null in closed-loop mode)
+     */
+    private OpenLoopQueueModel queueModel = null;
+
     /**
      * The test evaluation method
      */
@@ -209,28 +332,17 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
      */
     protected int knownLabels[] = null;
     
-    protected class TimeBoxedInstance {
-        public Instance inst = null;
-        public long startTime = 0;
-        public long deadline = 0;
-        public double[] priorVotes = null;
-        public TimeBoxedInstance(Instance x, long s, long d, double[] h) {
-            inst = x;
-            startTime = s;
-            deadline = s + d;
-            priorVotes = h;
-        }
-    }
-        
     /**
-     * Instance cache for latent training purposes
+     * Instance cache for latent training purposes. Instances used for training right away (warmup, unlabeled) are
+     * immediate entries, trained newest first ahead of the labeled instances that are due. An entry is recyclable if
+     * it owns the stream's instance while nothing else uses it.
      */
-    private final LinkedList<TimeBoxedInstance> latentTrainingInstQueue = new LinkedList<>();
+    private DelayedInstanceWheel latentTrainingInstQueue = new DelayedInstanceWheel(0);
 
     /**
      * Instance cache for latent Novel Class declaration of outliers
      */
-    private final LinkedList<TimeBoxedInstance> pendingFinalLabelInstQueue = new LinkedList<>();
+    private DelayedInstanceWheel pendingFinalLabelInstQueue = new DelayedInstanceWheel(0);
 
     /**
      * Stream for results as they are found
@@ -343,6 +455,7 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
             
             this.processChunk(getChunk(), learningCurve, evaluateStartTime);
             if (!memoryTesting(monitor, learningCurve, evaluateStartTime)) {
+                closeTrainingQueueStore();
                 return null;
             }
         } //end while()
@@ -357,6 +470,7 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
         if (immediateResultStream != null) {
             immediateResultStream.close();
         }
+        closeTrainingQueueStore();
         this.monitor.setCurrentActivityDescription("Done.");
         return learningCurve;
     } //end doMainTask()
@@ -375,6 +489,7 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
             knownLabels = new int[D.firstInstance().numClasses() + 2];
             Arrays.fill(knownLabels, 0);
         }
+        long chunkServiceTime = 0;
         //try {
               
             // TEST all data instances in stream...
@@ -388,13 +503,20 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
             } else {
                 startTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
                 samplesTested += test(D);
-                sampleTestTime += TimingUtils.getNanoCPUTimeOfCurrentThread() - startTime;
+                chunkServiceTime = TimingUtils.getNanoCPUTimeOfCurrentThread() - startTime;
+                sampleTestTime += chunkServiceTime;
             }
             
             // Train models adhering to latency and semi-supervised reduced training parameters...
             startTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
             samplesTrained += train();
-            sampleTrainTime += TimingUtils.getNanoCPUTimeOfCurrentThread() - startTime;
+            long chunkTrainTime = TimingUtils.getNanoCPUTimeOfCurrentThread() - startTime;
+            sampleTrainTime += chunkTrainTime;
+            chunkServiceTime += chunkTrainTime;
+            if (this.queueModel != null && !inWarmupPhase) {
+                // The emulated feed starts with the first evaluated chunk
+                this.queueModel.serve(D.numInstances(), TimingUtils.nanoTimeToSeconds(chunkServiceTime));
+            }
        // } catch (Exception e) {
        //     System.err.println("Caught Exception: " + e.toString() + " (" + e.getCause() + ": " +  e.getMessage()+ ")");
        // }
@@ -407,19 +529,23 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
 
             double avgTrainTime = TimingUtils.nanoTimeToSeconds(sampleTrainTime) / ((double) this.sampleFrequencyOption.getValue() / samplesTrained);
             double avgTestTime = TimingUtils.nanoTimeToSeconds(sampleTestTime) / ((double) this.sampleFrequencyOption.getValue() / samplesTested);
-            learningCurve.insertEntry(new LearningEvaluation(
-                    new Measurement[]{
-                        new Measurement("learning evaluation instances", instancesProcessed),
-                        new Measurement("evaluation time (" + (preciseCPUTiming ? "cpu " : "") + "seconds)", TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread() - evaluateStartTime)),
-                        new Measurement("model cost (RAM-Hours)", RAMHours),
-                        new Measurement("average chunk train time", avgTrainTime),
-                        new Measurement("average chunk train speed", samplesTrained / avgTrainTime),
-                        new Measurement("average chunk test time", avgTestTime),
-                        new Measurement("average chunk test speed", samplesTested / avgTestTime)
-                        
-                        },
-                    this.evaluator,
-                    this.learner));
+            Measurement[] taskMeasurements = new Measurement[]{
+                new Measurement("learning evaluation instances", instancesProcessed),
+                new Measurement("evaluation time (" + (preciseCPUTiming ? "cpu " : "") + "seconds)", TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread() - evaluateStartTime)),
+                new Measurement("model cost (RAM-Hours)", RAMHours),
+                new Measurement("average chunk train time", avgTrainTime),
+                new Measurement("average chunk train speed", samplesTrained / avgTrainTime),
+                new Measurement("average chunk test time", avgTestTime),
+                new Measurement("average chunk test speed", samplesTested / avgTestTime)
+            };
+            if (this.queueModel != null) {
+                taskMeasurements = append(taskMeasurements, this.queueModel.getMeasurements());
+            }
+            if (this.stream instanceof InstrumentedInstanceStream) {
+                // e.g. the ground truth drift of the generator
+                taskMeasurements = append(taskMeasurements, ((InstrumentedInstanceStream) this.stream).getStreamMeasurements());
+            }
+            learningCurve.insertEntry(new LearningEvaluation(taskMeasurements, this.evaluator, this.learner));
 
             if (immediateResultStream != null) {
                 if (firstDump) {
@@ -436,6 +562,27 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
         }
     }
 
+    /**
+     * Release the packed training queue rows (and delete their spill file), if any
+     */
+    private void closeTrainingQueueStore() {
+        if (this.trainingQueueStore != null) {
+            this.trainingQueueStore.close();
+            this.trainingQueueStore = null;
+        }
+    }
+
+    /**
+     * @param p_first measurements
+     * @param p_second more measurements
+     * @return both, in order
+     */
+    private static Measurement[] append(Measurement[] p_first, Measurement[] p_second) {
+        Measurement[] ret = Arrays.copyOf(p_first, p_first.length + p_second.length);
+        System.arraycopy(p_second, 0, ret, p_first.length, p_second.length);
+        return ret;
+    }
+
     /**
      *
      *
@@ -443,28 +590,44 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
      */
     private Instances getChunk() {
         Instances chunk = new Instances(stream.getHeader(), this.chunkSizeOption.getValue());
+        // Batch-capable streams generate the whole chunk in one pass into a primitive buffer
+        int batchRow = 0;
+        int numChunkEntries = 0;
+        if (this.instancePool != null && this.chunkEntries.length < this.chunkSizeOption.getValue()) {
+            this.chunkEntries = new int[this.chunkSizeOption.getValue()];
+        }
+        if (this.chunkBatch != null) {
+            ((BatchInstanceStream) stream).nextInstances(this.chunkBatch);
+        }
         // Add "chunk size" number of instances to test directly from the stream (first time we see each instance):
-        while (stream.hasMoreInstances() && chunk.numInstances() < this.chunkSizeOption.getValue()) {
-            Instance inst = stream.nextInstance();
+        while ((this.chunkBatch != null) ? (batchRow < this.chunkBatch.size())
+                : (stream.hasMoreInstances() && chunk.numInstances() < this.chunkSizeOption.getValue())) {
+            Instance inst = (this.chunkBatch != null) ? this.chunkBatch.instance(batchRow++, this.instancePool) : stream.nextInstance();
             this.instancesProcessed++;
             chunk.add(inst);
             
+            int owner;
             if (this.inWarmupPhase) { // For warmup phase, use full and immediate training
                 inst.setWeight(1.0);
-                latentTrainingInstQueue.addFirst(new TimeBoxedInstance(inst,this.instancesProcessed, 0,null)); 
+                owner = latentTrainingInstQueue.addImmediate(inst);
             } else if (rng.nextFloat() > this.trainingFractionOption.getValue()) { // Select a portion for latent training set by setting non-training instance weight to zero.
-                // place at beginning of the queue/list and record intended activation 'time' for immediate unsupervised 'training'
+                // immediate entry for immediate unsupervised 'training'
                 inst.setWeight(0.0);
-                latentTrainingInstQueue.addFirst(new TimeBoxedInstance(inst,this.instancesProcessed, 0,null)); 
+                owner = latentTrainingInstQueue.addImmediate(inst);
             } else {
                 if (this.sendZeroWeightsOption.isSet()) {
                     Instance unsupervisedInstance = (Instance) inst.copy();
                     unsupervisedInstance.setWeight(0.0);
                     //unsupervisedInstance.setClassValue(0);
-                    latentTrainingInstQueue.addFirst(new TimeBoxedInstance(unsupervisedInstance, this.instancesProcessed, 0, null));
+                    latentTrainingInstQueue.addImmediate(unsupervisedInstance);
                 }
-                // place at end of the queue/list and record intended activation 'time' for latent supervised training
-                latentTrainingInstQueue.addLast(new TimeBoxedInstance(inst, this.instancesProcessed, this.trainingTimeDelayOption.getValue(), null));
+                // schedule at the intended activation 'time' for latent supervised training
+                // (after the zero-weight copy, which shares its values, has been used)
+                owner = latentTrainingInstQueue.add(inst, LabelDelayDistribution.deadline(this.instancesProcessed, this.trainingDelays.next(inst.classValue())));
+            }
+            if (this.instancePool != null) {
+                latentTrainingInstQueue.setRecyclable(owner, true);
+                this.chunkEntries[numChunkEntries++] = owner;
             }
 
             // MOA framework housekeeping and reporting...
@@ -500,26 +663,29 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
         int outlierLabel = novelClassLabel + 1;
         
         // For latent label outliers that have reached their deadline, we must now make a decision:
-        while (!this.pendingFinalLabelInstQueue.isEmpty() && this.pendingFinalLabelInstQueue.peek().deadline <= this.instancesProcessed) {
-            TimeBoxedInstance ti = this.pendingFinalLabelInstQueue.pop();
-            int y = (int) ti.inst.classValue();
+        int pending;
+        while ((pending = this.pendingFinalLabelInstQueue.poll(this.instancesProcessed)) >= 0) {
+            Instance pendingInst = this.pendingFinalLabelInstQueue.getInstance(pending);
+            this.pendingFinalLabelInstQueue.release(pending);
+            int y = (int) pendingInst.classValue();
             double[] prediction = null;
             if (y >= 0 && y < knownLabels.length && knownLabels[y] <= this.labelDeadlineOption.getValue()) {
-                Instance novelInst = (Instance) ti.inst.copy();
+                Instance novelInst = (Instance) pendingInst.copy();
                 //novelInst.setDataset(AbstractNovelClassClassifier.augmentInstances(novelInst.dataset()));
                 //novelInst.setClassValue(AbstractNovelClassClassifier.NOVEL_LABEL_STR);
                 novelInst.setWeight(NOVEL_WEIGHT);
                 prediction = learner.getVotesForInstance(novelInst);
                 evaluator.addResult(novelInst, prediction); // Outlier out of time. Remove it
             } else {
-                prediction = learner.getVotesForInstance(ti.inst);
-                evaluator.addResult(ti.inst, prediction); // Outlier out of time. Remove it
+                prediction = learner.getVotesForInstance(pendingInst);
+                evaluator.addResult(pendingInst, prediction); // Outlier out of time. Remove it
             }
             
-            this.cm.add(weka.core.Utils.maxIndex(prediction),ti.inst.classValue());
+            this.cm.add(weka.core.Utils.maxIndex(prediction),pendingInst.classValue());
         }
                
         // Run accuracy test for current instance(s)
+        int row = 0;
         for (Instance i : testInstances) {
             int y = (int) i.classValue();
             double[] prediction = null;
@@ -533,11 +699,15 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
             }
             prediction = learner.getVotesForInstance(instToActuallyPredict);
             if ((prediction.length > outlierLabel) && (prediction[outlierLabel] > (1.0 / prediction.length))) {
-                this.pendingFinalLabelInstQueue.add(new TimeBoxedInstance(i,this.instancesProcessed, this.labelDeadlineOption.getValue(), prediction)); // Delay accuracy metrics until stale time
+                this.pendingFinalLabelInstQueue.add(i, this.instancesProcessed + this.labelDeadlineOption.getValue()); // Delay accuracy metrics until stale time
+                if (this.instancePool != null) {
+                    this.latentTrainingInstQueue.setRecyclable(this.chunkEntries[row], false); // i shares its values, so never recycle them
+                }
             } else {
                 evaluator.addResult(instToActuallyPredict, prediction); // Not an outlier, so treat it like normal
                 this.cm.add(weka.core.Utils.maxIndex(prediction),i.classValue());
             }
+            ++row;
         }// end for
         
         assert this.pendingFinalLabelInstQueue.size() < (this.labelDeadlineOption.getValue() + 1) : "Cache 'pendingFinalLabelInstQueue' is larger than designed.";
@@ -552,8 +722,11 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
     private int train() {
         this.monitor.setCurrentActivityDescription((this.inWarmupPhase) ? "Warmup Training" : "Online Training");
         int ret = 0;
-        while (!this.latentTrainingInstQueue.isEmpty() && this.latentTrainingInstQueue.peek().deadline <= this.instancesProcessed) {
-            Instance x = this.latentTrainingInstQueue.pop().inst;
+        int entry;
+        while ((entry = this.latentTrainingInstQueue.poll(this.instancesProcessed)) >= 0) {
+            Instance x = this.latentTrainingInstQueue.getInstance(entry);
+            boolean recyclable = this.latentTrainingInstQueue.isRecyclable(entry);
+            this.latentTrainingInstQueue.release(entry);
             if (x.weight() > 0.0 || this.sendZeroWeightsOption.isSet()) {
                 if (!x.classIsMissing()) {
                     learner.trainOnInstance(x);
@@ -561,8 +734,11 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
                     ret++;
                 }
             }
+            if (recyclable) {
+                this.instancePool.offer(x);
+            }
         }
-        assert this.latentTrainingInstQueue.size() < (this.trainingTimeDelayOption.getValue() + 1) : "Cache 'latentTrainingInstQueue' is larger than designed.";
+        assert !this.trainingDelays.isFixed() || this.latentTrainingInstQueue.size() < (this.trainingTimeDelayOption.getValue() + 1) : "Cache 'latentTrainingInstQueue' is larger than designed.";
         return ret;
     }
 
@@ -608,9 +784,34 @@ public class EvaluateNonStationaryDynamicStream extends MainTask {
         this.stream = (InstanceStream) getPreparedClassOption(this.streamOption);
         this.learner = (Classifier) getPreparedClassOption(this.learnerOption);
         this.learner.setModelContext(stream.getHeader());
+        this.chunkBatch = null;
+        this.instancePool = (this.stream instanceof RecyclingInstanceStream)
+                ? ((RecyclingInstanceStream) this.stream).getInstancePool() : null;
+        if (this.stream instanceof BatchInstanceStream && ((BatchInstanceStream) this.stream).hasExactBatches()
+                && this.chunkSizeOption.getValue() > 1) {
+            this.chunkBatch = new ColumnarInstanceBatch(stream.getHeader(), this.chunkSizeOption.getValue());
+        }
         this.evaluator = (ClassificationPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
-        this.pendingFinalLabelInstQueue.clear();
-        this.latentTrainingInstQueue.clear();
+        this.queueModel = null;
+        if (this.arrivalProcessOption.getChosenIndex() > 0) {
+            // Own seed, so arrivals do not perturb the training selection drawn from rng
+            ArrivalProcess arrivals = new ArrivalProcess(this.arrivalProcessOption.getChosenIndex() - 1,
+                    this.arrivalRateOption.getValue(), this.burstOnTimeOption.getValue(),
+                    this.burstOffTimeOption.getValue(), this.randomSeed.getValue() * 0x9E3779B97F4A7C15L + 1);
+            this.queueModel = new OpenLoopQueueModel(arrivals);
+        }
+        // Own seed, so random delays do not perturb the training selection drawn from rng
+        this.trainingDelays = new LabelDelayDistribution(this.trainingDelayDistributionOption.getChosenIndex(),
+                this.trainingTimeDelayOption.getValue(), this.trainingDelayTailIndexOption.getValue(),
+                LabelDelayDistribution.parseClassDelays(this.classTrainingDelaysOption.getValue()),
+                this.maxTrainingDelayOption.getValue(), this.randomSeed.getValue() * 0x9E3779B97F4A7C15L + 2);
+        closeTrainingQueueStore();
+        if (this.trainingQueueStorageOption.getChosenIndex() == 1) {
+            this.trainingQueueStore = new PackedInstanceStore(stream.getHeader(),
+                    this.trainingQueueMemoryOption.getValue() * 1048576L, this.trainingQueueSpillFileOption.getFile());
+        }
+        this.latentTrainingInstQueue = new DelayedInstanceWheel(this.trainingDelays.getHorizon(), this.trainingQueueStore);
+        this.pendingFinalLabelInstQueue = new DelayedInstanceWheel(this.labelDeadlineOption.getValue());
         this.instancesProcessed = 0;
         this.secondsElapsed = 0;
         this.dumpFile = this.dumpFileOption.getFile();
@@ -0,0 +1,510 @@
+/*
+ *    ExportStreamToFile.java
+ *
+ *    Copyright (C) 2013 University of Texas at Dallas
+ *    @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import moa.core.InstancesHeader;
+import moa.core.ObjectRepository;
+import moa.options.ClassOption;
+import moa.options.FileOption;
+import moa.options.FlagOption;
+import moa.options.IntOption;
+import moa.options.MultiChoiceOption;
+import moa.streams.BatchInstanceStream;
+import moa.streams.ColumnarInstanceBatch;
+import moa.streams.InstanceStream;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Writes a stream to an ARFF or CSV file, much faster than WriteStreamToARFFFile. The stream is read in blocks of rows
+ * (straight into primitive column buffers for batch-capable streams such as the IRND generator), and each block is
+ * formatted on a worker thread into a reusable byte buffer, with numbers converted digit by digit rather than through
+ * Strings. Blocks are written to a FileChannel in stream order, while the next blocks are generated and formatted.
+ *
+ * Values are written exactly as Instance.toString() writes them (rounded to decimalPlaces digits, trailing zeros
+ * dropped), always in dense form. With gzip, every block is compressed on its worker thread into its own gzip member;
+ * a concatenation of gzip members is a valid gzip file, which gunzip, zcat and GZIPInputStream read as one.
+ *
+ * Copyright (C) 2013 University of Texas at Dallas
+ *
+ * @author Brandon S. Parker (brandon.parker@utdallas.edu)
+ * @version $Revision: 1 $
+ */
+public class ExportStreamToFile extends MainTask {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getPurposeString() {
+        return "Writes a stream to an ARFF or CSV file (optionally gzipped), formatting on several threads.";
+    }
+
+    public ClassOption streamOption = new ClassOption("stream", 's',
+                                                      "Stream to write.",
+                                                      InstanceStream.class,
+                                                      "generators.InducedRandomNonStationaryDataGenerator");
+
+    public FileOption exportFileOption = new FileOption("exportFile", 'f',
+                                                        "Destination file.", null, "arff", true);
+
+    public MultiChoiceOption formatOption = new MultiChoiceOption("format", 'F',
+                                                                  "File format", new String[]{"ARFF", "CSV"},
+                                                                  new String[]{"ARFF header, then comma separated values", "Line of attribute names, then comma separated values"}, 0);
+
+    public IntOption maxInstancesOption = new IntOption("maxInstances", 'm',
+                                                        "Maximum number of instances to write (-1 = the entire stream, for finite streams only).",
+                                                        10000000, -1, Integer.MAX_VALUE);
+
+    public FlagOption suppressHeaderOption = new FlagOption("suppressHeader", 'h',
+                                                            "Suppress the ARFF header / CSV attribute name line.");
+
+    public FlagOption gzipOption = new FlagOption("gzip", 'z',
+                                                  "Compress the output with gzip.");
+
+    public IntOption compressionLevelOption = new IntOption("compressionLevel", 'l',
+                                                            "Deflate level used with gzip (1 = fastest, 9 = smallest).", 1, 1, 9);
+
+    public IntOption threadsOption = new IntOption("threads", 't',
+                                                   "Number of formatting threads.",
+                                                   Runtime.getRuntime().availableProcessors(), 1, 256);
+
+    public IntOption blockSizeOption = new IntOption("blockSize", 'b',
+                                                     "Number of instances formatted (and compressed) as one block.",
+                                                     4096, 1, Integer.MAX_VALUE);
+
+    public IntOption decimalPlacesOption = new IntOption("decimalPlaces", 'p',
+                                                         "Digits written after the decimal point (as Instance.toString()).",
+                                                         6, 0, 15);
+
+    protected static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    protected static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    // Formatting tables, built once from the header
+    protected int numAttributes;
+    protected int classIndex;
+    protected int[] attributeColumn;    // attribute index -> column of the batch (-1 for the class)
+    protected byte[][][] labelBytes;    // attribute index -> quoted nominal value -> bytes (null for numeric)
+    protected Attribute[] slowAttributes; // attributes formatted through WEKA (e.g. dates), else null
+    protected int maxRowBytes;
+    protected double scale;
+
+    /**
+     * A block of rows in flight: read by the task thread, formatted and compressed by a worker, then written by the task
+     * thread. All buffers are reused from block to block.
+     */
+    protected class Block {
+        protected final ColumnarInstanceBatch batch;
+        protected byte[] text = new byte[1 << 16];
+        protected int textLength = 0;
+        protected byte[] packed = new byte[1 << 16];
+        protected int packedLength = 0;
+        protected Deflater deflater = null;
+        protected final CRC32 crc = new CRC32();
+        protected Future<?> done = null;
+
+        protected Block(InstancesHeader p_header, int p_capacity) {
+            this.batch = new ColumnarInstanceBatch(p_header, p_capacity);
+        }
+
+        /**
+         * Worker side: turn the rows of the batch into text, then compress it if asked to
+         */
+        protected void format() {
+            this.textLength = 0;
+            for (int row = 0; row < this.batch.size(); ++row) {
+                if (this.text.length - this.textLength < maxRowBytes) {
+                    this.text = Arrays.copyOf(this.text, Math.max(this.text.length * 2, this.textLength + maxRowBytes));
+                }
+                this.textLength = formatRow(this.batch, row, this.text, this.textLength);
+            }
+            if (gzipOption.isSet()) {
+                compress(this.text, this.textLength);
+            }
+        }
+
+        /**
+         * Compress bytes into a self-contained gzip member
+         */
+        protected void compress(byte[] p_bytes, int p_length) {
+            if (this.deflater == null) {
+                this.deflater = new Deflater(compressionLevelOption.getValue(), true);
+            }
+            this.deflater.reset();
+            this.deflater.setInput(p_bytes, 0, p_length);
+            this.deflater.finish();
+            this.crc.reset();
+            this.crc.update(p_bytes, 0, p_length);
+            System.arraycopy(GZIP_HEADER, 0, this.packed, 0, GZIP_HEADER.length);
+            this.packedLength = GZIP_HEADER.length;
+            while (!this.deflater.finished()) {
+                if (this.packedLength == this.packed.length) {
+                    this.packed = Arrays.copyOf(this.packed, this.packed.length * 2);
+                }
+                this.packedLength += this.deflater.deflate(this.packed, this.packedLength, this.packed.length - this.packedLength);
+            }
+            if (this.packed.length - this.packedLength < 8) {
+                this.packed = Arrays.copyOf(this.packed, this.packedLength + 8);
+            }
+            this.packedLength = putIntLE(this.packed, this.packedLength, (int) this.crc.getValue());
+            this.packedLength = putIntLE(this.packed, this.packedLength, p_length);
+        }
+
+        /**
+         * Task thread side: append the formatted block to the file
+         */
+        protected void write(FileChannel p_channel) throws IOException {
+            ByteBuffer out = gzipOption.isSet() ? ByteBuffer.wrap(this.packed, 0, this.packedLength)
+                    : ByteBuffer.wrap(this.text, 0, this.textLength);
+            while (out.hasRemaining()) {
+                p_channel.write(out);
+            }
+        }
+    }
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return String.class;
+    }
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+        InstanceStream stream = (InstanceStream) getPreparedClassOption(this.streamOption);
+        File destFile = this.exportFileOption.getFile();
+        if (destFile == null) {
+            throw new IllegalArgumentException("No destination file to write to");
+        }
+        InstancesHeader header = stream.getHeader();
+        InstancesHeader columnHeader = columnHeader(stream, header);
+        buildFormattingTables(columnHeader);
+        int blockSize = this.blockSizeOption.getValue();
+        if (this.maxInstancesOption.getValue() >= 0) {
+            blockSize = Math.max(1, Math.min(blockSize, this.maxInstancesOption.getValue()));
+        }
+        final int numThreads = this.threadsOption.getValue();
+        Block[] blocks = new Block[2 * numThreads + 1];
+        for (int i = 0; i < blocks.length; ++i) {
+            blocks[i] = new Block(columnHeader, blockSize);
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(numThreads, (Runnable r) -> {
+            Thread t = new Thread(r, "export-formatter");
+            t.setDaemon(true);
+            return t;
+        });
+        long numWritten = 0;
+        long startTime = System.nanoTime();
+        monitor.setCurrentActivity("Writing stream to " + destFile + "...", -1.0);
+        try (FileChannel channel = FileChannel.open(destFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            if (!this.suppressHeaderOption.isSet()) {
+                byte[] headerBytes = headerText(header).getBytes(StandardCharsets.UTF_8);
+                Block b = blocks[0];
+                b.text = (headerBytes.length > b.text.length) ? headerBytes.clone() : b.text;
+                System.arraycopy(headerBytes, 0, b.text, 0, headerBytes.length);
+                b.textLength = headerBytes.length;
+                if (this.gzipOption.isSet()) {
+                    b.compress(b.text, b.textLength);
+                }
+                b.write(channel);
+            }
+            long remaining = this.maxInstancesOption.getValue();
+            long seq = 0;
+            while (remaining != 0 && stream.hasMoreInstances()) {
+                final Block b = blocks[(int) (seq % blocks.length)];
+                if (b.done != null) {
+                    await(b.done);
+                    b.done = null;
+                    b.write(channel);
+                }
+                int n = readBlock(stream, b.batch, (remaining < 0) ? blockSize : (int) Math.min(blockSize, remaining));
+                if (n == 0) {
+                    break;
+                }
+                b.done = workers.submit(b::format);
+                ++seq;
+                numWritten += n;
+                remaining -= (remaining < 0) ? 0 : n;
+                if (monitor.taskShouldAbort()) {
+                    return null;
+                }
+                if (this.maxInstancesOption.getValue() > 0) {
+                    monitor.setCurrentActivityFractionComplete((double) numWritten / this.maxInstancesOption.getValue());
+                }
+            }
+            // Write the blocks still in flight, oldest first
+            for (long i = Math.max(0, seq - blocks.length); i < seq; ++i) {
+                Block b = blocks[(int) (i % blocks.length)];
+                if (b.done != null) {
+                    await(b.done);
+                    b.done = null;
+                    b.write(channel);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write to " + destFile, e);
+        } finally {
+            workers.shutdownNow();
+            for (Block b : blocks) {
+                if (b.deflater != null) {
+                    b.deflater.end();
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return "Wrote " + numWritten + " instances to " + destFile + " in " + String.format("%.1f s (%.0f instances/s)", seconds, numWritten / seconds);
+    }
+
+    /**
+     * @param p_future block formatting job to wait for (rethrowing its failure)
+     */
+    protected static void await(Future<?> p_future) {
+        try {
+            p_future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while formatting", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to format block", e.getCause());
+        }
+    }
+
+    /**
+     * Batches hold the class as an int label and carry no weights, so only streams that report exact batches (see
+     * BatchInstanceStream.hasExactBatches()) keep the class as a label column and are read in batches. Any other stream
+     * is read instance by instance with the class (if there is one) as an ordinary double column, so a numeric class is
+     * written in full and a missing class as "?".
+     *
+     * @param p_stream source
+     * @param p_header stream header
+     * @return header describing the columns of the blocks
+     */
+    protected static InstancesHeader columnHeader(InstanceStream p_stream, InstancesHeader p_header) {
+        if (p_stream instanceof BatchInstanceStream && ((BatchInstanceStream) p_stream).hasExactBatches()) {
+            return p_header;
+        }
+        Instances columns = new Instances(p_header, 0);
+        columns.setClassIndex(-1);
+        return new InstancesHeader(columns);
+    }
+
+    /**
+     * Read the next rows of the stream into a batch
+     *
+     * @param p_stream source
+     * @param p_batch destination (its size is set to the number of rows read)
+     * @param p_count number of rows wanted
+     * @return number of rows read
+     */
+    protected static int readBlock(InstanceStream p_stream, ColumnarInstanceBatch p_batch, int p_count) {
+        boolean labelColumn = (p_batch.getHeader().classIndex() >= 0);
+        if (labelColumn && p_count == p_batch.capacity()) {
+            return ((BatchInstanceStream) p_stream).nextInstances(p_batch);
+        }
+        double[][] columns = p_batch.getAttributeValues();
+        int row = 0;
+        for (; row < p_count && p_stream.hasMoreInstances(); ++row) {
+            Instance inst = p_stream.nextInstance();
+            for (int column = 0; column < columns.length; ++column) {
+                columns[column][row] = inst.value(p_batch.attributeIndex(column));
+            }
+            if (labelColumn) {
+                if (inst.classIsMissing()) {
+                    throw new IllegalStateException("Batch stream produced an instance with a missing class value");
+                }
+                p_batch.getClassValues()[row] = (int) inst.classValue();
+            }
+        }
+        p_batch.setSize(row);
+        return row;
+    }
+
+    /**
+     * @param p_header stream header
+     * @return ARFF header (up to and including the @data line and a blank line), or the CSV line of attribute names
+     */
+    protected String headerText(InstancesHeader p_header) {
+        if (this.formatOption.getChosenIndex() == 0) {
+            return new Instances(p_header, 0).toString() + "\n"; // as WriteStreamToARFFFile writes it
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < p_header.numAttributes(); ++i) {
+            sb.append((i > 0) ? "," : "").append(Utils.quote(p_header.attribute(i).name()));
+        }
+        return sb.append('\n').toString();
+    }
+
+    /**
+     * Precompute everything per attribute that formatting a row needs
+     *
+     * @param p_header stream header
+     */
+    protected void buildFormattingTables(InstancesHeader p_header) {
+        this.numAttributes = p_header.numAttributes();
+        this.classIndex = p_header.classIndex();
+        this.scale = Math.pow(10.0, this.decimalPlacesOption.getValue());
+        this.attributeColumn = new int[this.numAttributes];
+        this.labelBytes = new byte[this.numAttributes][][];
+        this.slowAttributes = new Attribute[this.numAttributes];
+        int column = 0;
+        this.maxRowBytes = 1;
+        for (int i = 0; i < this.numAttributes; ++i) {
+            Attribute a = p_header.attribute(i);
+            this.attributeColumn[i] = (i == this.classIndex) ? -1 : column++;
+            int maxBytes = 32; // sign, 19 integer digits, point and decimals of a number, or "?"
+            if (a.isNominal() || a.isString()) {
+                this.labelBytes[i] = new byte[a.numValues()][];
+                for (int v = 0; v < a.numValues(); ++v) {
+                    this.labelBytes[i][v] = Utils.quote(a.value(v)).getBytes(StandardCharsets.UTF_8);
+                    maxBytes = Math.max(maxBytes, this.labelBytes[i][v].length);
+                }
+            } else if (!a.isNumeric() || a.isDate()) {
+                this.slowAttributes[i] = a;
+                maxBytes = 256;
+            }
+            this.maxRowBytes += maxBytes + 1;
+        }
+    }
+
+    /**
+     * Format one row as a line of comma separated values
+     *
+     * @param p_batch source rows
+     * @param p_row row to format
+     * @param p_out destination, with at least maxRowBytes free after p_pos
+     * @param p_pos where to start writing
+     * @return position after the line
+     */
+    protected int formatRow(ColumnarInstanceBatch p_batch, int p_row, byte[] p_out, int p_pos) {
+        double[][] columns = p_batch.getAttributeValues();
+        int pos = p_pos;
+        for (int i = 0; i < this.numAttributes; ++i) {
+            if (i > 0) {
+                p_out[pos++] = ',';
+            }
+            double v = (this.attributeColumn[i] < 0) ? p_batch.getClassValues()[p_row] : columns[this.attributeColumn[i]][p_row];
+            if (Double.isNaN(v)) {
+                p_out[pos++] = '?';
+            } else if (this.labelBytes[i] != null) {
+                byte[] label = this.labelBytes[i][(int) v];
+                System.arraycopy(label, 0, p_out, pos, label.length);
+                pos += label.length;
+            } else if (this.slowAttributes[i] != null) {
+                byte[] text = Utils.quote(this.slowAttributes[i].formatDate(v)).getBytes(StandardCharsets.UTF_8);
+                System.arraycopy(text, 0, p_out, pos, Math.min(text.length, 255));
+                pos += Math.min(text.length, 255);
+            } else {
+                pos = formatNumber(v, p_out, pos);
+            }
+        }
+        p_out[pos++] = '\n';
+        return pos;
+    }
+
+    /**
+     * Write a number the way Utils.doubleToString(value, decimalPlaces) does: rounded half up to decimalPlaces
+     * digits, with trailing zeros (and a trailing point) dropped
+     *
+     * @param p_value number to write
+     * @param p_out destination
+     * @param p_pos where to start writing
+     * @return position after the number
+     */
+    protected int formatNumber(double p_value, byte[] p_out, int p_pos) {
+        double temp = p_value * this.scale;
+        if (!(Math.abs(temp) < Long.MAX_VALUE)) {
+            // Out of long range: WEKA falls back to the default double format too
+            byte[] text = Double.toString(p_value).getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(text, 0, p_out, p_pos, text.length);
+            return p_pos + text.length;
+        }
+        long precisionValue = (temp > 0) ? (long) (temp + 0.5) : -(long) (Math.abs(temp) + 0.5);
+        int pos = p_pos;
+        if (precisionValue < 0) {
+            p_out[pos++] = '-';
+            precisionValue = -precisionValue;
+        }
+        int decimals = this.decimalPlacesOption.getValue();
+        long integerPart = precisionValue / POWERS_OF_TEN[decimals];
+        long fraction = precisionValue % POWERS_OF_TEN[decimals];
+        pos = putDigits(integerPart, p_out, pos);
+        if (fraction != 0) {
+            p_out[pos++] = '.';
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                --decimals;
+            }
+            for (int d = decimals - 1; d >= 0; --d) {
+                p_out[pos + d] = (byte) ('0' + (fraction % 10));
+                fraction /= 10;
+            }
+            pos += decimals;
+        }
+        return pos;
+    }
+
+    /**
+     * @return position after the decimal digits of a non-negative number
+     */
+    protected static int putDigits(long p_value, byte[] p_out, int p_pos) {
+        int numDigits = 1;
+        while (numDigits < POWERS_OF_TEN.length && p_value >= POWERS_OF_TEN[numDigits]) {
+            ++numDigits;
+        }
+        long v = p_value;
+        for (int d = numDigits - 1; d >= 0; --d) {
+            p_out[p_pos + d] = (byte) ('0' + (v % 10));
+            v /= 10;
+        }
+        return p_pos + numDigits;
+    }
+
+    /**
+     * @return position after a little-endian int (as gzip trailers use)
+     */
+    protected static int putIntLE(byte[] p_out, int p_pos, int p_value) {
+        p_out[p_pos] = (byte) p_value;
+        p_out[p_pos + 1] = (byte) (p_value >>> 8);
+        p_out[p_pos + 2] = (byte) (p_value >>> 16);
+        p_out[p_pos + 3] = (byte) (p_value >>> 24);
+        return p_pos + 4;
+    }
+}